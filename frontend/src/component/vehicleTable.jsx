@@ -23,9 +23,10 @@ export const tableTheme = themeQuartz
         selectedRowBackgroundColor: "#1e3a8a",
     });
 
-export default function VehicleTable({onOpenEditVehicleModal, onReadyRefresh, onReadyControls}) {
+export default function VehicleTable({onOpenEditVehicleModal, onReadyRefresh, onReadyControls, onFilterModelChange}) {
 
     const gridApiRef = useRef(null); // API таблицы
+    const versionsRef = useRef(new Map()); // id -> последняя применённая version из WS-кадров
     const colDefs = useMemo(() => ([
         {
             headerName: "ID",
@@ -269,6 +270,18 @@ export default function VehicleTable({onOpenEditVehicleModal, onReadyRefresh, on
             // Принудительное обновление текущего кэша (без смены фильтров)
             refresh: () => api.refreshInfiniteCache(),
 
+            // Обновить на месте загруженные строки из WS-кадра изменений ({type:"updated", id, version, data});
+            // строки вне загруженных блоков придут с сервера при прокрутке, старые версии пропускаются
+            patchRows: (changes) => {
+                for (const c of changes || []) {
+                    if (c.type !== "updated" || !c.data) continue;
+                    const known = versionsRef.current.get(c.id);
+                    if (known != null && c.version != null && c.version <= known) continue;
+                    if (c.version != null) versionsRef.current.set(c.id, c.version);
+                    api.getRowNode(String(c.id))?.setData(c.data);
+                }
+            },
+
             // Полный сброс фильтров+сортировки и сброс кэша
             clearFilters: () => {
                 api.setFilterModel(null);
@@ -343,7 +356,11 @@ export default function VehicleTable({onOpenEditVehicleModal, onReadyRefresh, on
     const onFilterChanged = useCallback(() => {
         gridApiRef.current?.purgeInfiniteCache();
         gridApiRef.current?.ensureIndexVisible(0);
-    }, []);
+        onFilterModelChange?.(gridApiRef.current?.getFilterModel() || {}); // родитель переподпишет WS на новый фильтр
+    }, [onFilterModelChange]);
+
+    // id строки для getRowNode: по нему WS-изменения находят строку в кэше грида
+    const getRowId = useCallback((p) => String(p.data.id), []);
 
     const onSortChanged = useCallback(() => {
         gridApiRef.current?.purgeInfiniteCache();
@@ -360,6 +377,7 @@ export default function VehicleTable({onOpenEditVehicleModal, onReadyRefresh, on
                 maxBlocksInCache={2}
                 pagination
                 paginationPageSize={50}
+                getRowId={getRowId}
                 onGridReady={onGridReady}
                 onFilterChanged={onFilterChanged}
                 onSortChanged={onSortChanged}
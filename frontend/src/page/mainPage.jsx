@@ -51,6 +51,8 @@ export default function MainPage() {
 
     const wsRef = useRef(null); // текущее соединение WebSocket
     const reconnectTimerRef = useRef(null); // id таймера реконнекта
+    const filterModelRef = useRef({}); // текущий filterModel грида - по нему подписка на изменения
+    const tableControlsRef = useRef(null); // контролы таблицы для обработчика WS (без переподключения сокета)
 
     // url
     const WS_URL = useMemo(() => {
@@ -66,6 +68,19 @@ export default function MainPage() {
         }
     }, []);
 
+    // подписка на изменения строк под текущий фильтр грида: сервер шлёт только строки,
+    // которые были или стали видны в фильтре, вместо "refresh" на каждую запись
+    const sendSubscribe = useCallback(() => {
+        const ws = wsRef.current;
+        if (ws?.readyState !== WebSocket.OPEN) return; // при открытии сокета onopen подпишется сам
+        ws.send(JSON.stringify({type: "subscribe", filterModel: filterModelRef.current || {}}));
+    }, []);
+
+    const onFilterModelChange = useCallback((filterModel) => {
+        filterModelRef.current = filterModel;
+        sendSubscribe();
+    }, [sendSubscribe]);
+
     const connectWs = useCallback(() => {
         if (wsRef.current?.readyState === WebSocket.OPEN || wsRef.current?.readyState === WebSocket.CONNECTING)
             return; // уже открыт или соединяется
@@ -77,10 +92,29 @@ export default function MainPage() {
 
             ws.onopen = () => {
                 retry = 1000; // Соединение установлено - сброс интервала реконнекта
+                sendSubscribe();
             };
             ws.onmessage = (evt) => {
                 const msg = (evt.data || "").toString().trim();
-                if (msg === "refresh") refreshGrid?.();
+                if (msg === "refresh") { // импорт, переполнение очереди, изменения до подписки
+                    refreshGrid?.();
+                    return;
+                }
+                // {"event":"changes","changes":[{type, id, version, data, view?}, ...]}:
+                // updated без view - строка осталась в фильтре, обновляем её на месте; created/deleted
+                // и вход/выход из фильтра (view) меняют состав страниц - перечитываем грид
+                let frame;
+                try {
+                    frame = JSON.parse(msg);
+                } catch {
+                    return; // не JSON - игнорируем
+                }
+                if (frame?.event !== "changes" || !frame.changes?.length) return;
+                if (frame.changes.some(c => c.type !== "updated" || c.view)) {
+                    refreshGrid?.();
+                } else {
+                    tableControlsRef.current?.patchRows?.(frame.changes);
+                }
             };
             ws.onclose = () => {
                 reconnectTimerRef.current = setTimeout(() => {
@@ -97,7 +131,7 @@ export default function MainPage() {
         };
 
         openSocket();
-    }, [WS_URL, refreshGrid]);
+    }, [WS_URL, refreshGrid, sendSubscribe]);
 
     useEffect(() => {
         connectWs();
@@ -381,24 +415,30 @@ export default function MainPage() {
         const file = e.target.files && e.target.files[0];
         if (!file) return;
 
+        // формат - по расширению, как у файлов выгрузки (vehicles.json / .ndjson / .csv)
+        const ext = file.name.split(".").pop().toLowerCase();
+        const format = ext === "ndjson" || ext === "csv" ? ext : "json";
+
         try {
-            // Быстрая проверка формата перед отправкой файла на сервер
-            try {
-                const text = await file.text();
-                const parsed = JSON.parse(text);
-                if (!Array.isArray(parsed)) {
-                    toast.warning("Ожидается JSON-массив объектов для импорта");
+            // Быстрая проверка формата перед отправкой файла на сервер (NDJSON и CSV проверяет сервер)
+            if (format === "json") {
+                try {
+                    const text = await file.text();
+                    const parsed = JSON.parse(text);
+                    if (!Array.isArray(parsed)) {
+                        toast.warning("Ожидается JSON-массив объектов для импорта");
+                        return;
+                    }
+                } catch (err) {
+                    toast.warning("Файл не является корректным JSON");
                     return;
                 }
-            } catch (err) {
-                toast.warning("Файл не является корректным JSON");
-                return;
             }
 
-            const response = await fetch(`${API_BASE}/api/vehicle/import`, {
+            const response = await fetch(`${API_BASE}/api/vehicle/import?format=${format}`, {
                 method: "POST",
                 headers: {
-                    "Content-Type": file.type || "application/json",
+                    "Content-Type": file.type || "application/octet-stream",
                 },
                 credentials: 'include',
                 body: file,
@@ -496,7 +536,7 @@ export default function MainPage() {
                             <input
                                 ref={fileInputRef}
                                 type="file"
-                                accept="application/json"
+                                accept=".json,.ndjson,.csv,application/json,application/x-ndjson,text/csv"
                                 style={{display: "none"}}
                                 onChange={handleFileChange}
                             />
@@ -536,7 +576,11 @@ export default function MainPage() {
             <VehicleTable
                 onOpenEditVehicleModal={openEditVehicleModal}
                 onReadyRefresh={(fn) => setRefreshGrid(() => fn)}
-                onReadyControls={(controls) => setTableControls(controls)}
+                onReadyControls={(controls) => {
+                    tableControlsRef.current = controls;
+                    setTableControls(controls);
+                }}
+                onFilterModelChange={onFilterModelChange}
             />
 
             <Modal
@@ -0,0 +1,52 @@
+-- Индексы под фильтры и сортировки грида (GridTablePredicateBuilder, keyset-пагинация по (колонка, id)).
+-- Идемпотентно, можно накатывать на рабочую БД: CONCURRENTLY не блокирует запись,
+-- но не работает внутри транзакции - запускать psql без -1 / BEGIN:
+--   psql -d <db> -f sql/indexes.sql
+-- Список должен совпадать с GridIndexAdvisor.MANAGED_INDEXES (проверяется при старте, GET /indexes/advisor)
+
+-- trigram-индекс для lower(name) LIKE '%...%' (contains/endsWith/startsWith/equals)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- дефолтная сортировка грида: ORDER BY creation_time DESC, id DESC (+ keyset по той же паре)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_creation_time_id_idx
+    ON vehicle (creation_time DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_name_trgm_idx
+    ON vehicle USING gin (lower(name) gin_trgm_ops);
+
+-- полнотекстовый предфильтр многословного поиска (fn_text_matches, -Dgrid.text.search=fts)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_name_fts_idx
+    ON vehicle USING gin (to_tsvector('simple', name));
+
+-- natural-id: поиск по точному имени (проверка уникальности, findByName) обслуживает индекс
+-- ограничения vehicle_name_uniq из sql/init.sql; прежний vehicle_name_idx ему дублирует
+DROP INDEX CONCURRENTLY IF EXISTS vehicle_name_idx;
+
+-- FK: подсчёт ТС по координатам, удаление/переназначение координат
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_coordinates_id_idx
+    ON vehicle (coordinates_id);
+
+-- числовые колонки: диапазоны/равенство и сортировка; id - tie-breaker keyset-пагинации
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_engine_power_id_idx
+    ON vehicle (engine_power, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_number_of_wheels_id_idx
+    ON vehicle (number_of_wheels, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_capacity_id_idx
+    ON vehicle (capacity, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_distance_travelled_id_idx
+    ON vehicle (distance_travelled, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_fuel_consumption_id_idx
+    ON vehicle (fuel_consumption, id);
+
+-- type/fuel_type: 4 и 3 значения - для фильтра индекс почти бесполезен, но даёт сортировку без Sort
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_type_id_idx
+    ON vehicle (type, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vehicle_fuel_type_id_idx
+    ON vehicle (fuel_type, id);
+
+-- coordinates: (x, y) уже покрыт coordinates_xy_uniq, отдельно нужен только y
+CREATE INDEX CONCURRENTLY IF NOT EXISTS coordinates_y_id_idx
+    ON coordinates (y, id);
+
+ANALYZE vehicle;
+ANALYZE coordinates;
@@ -26,16 +26,65 @@ CREATE TABLE IF NOT EXISTS vehicle
     distance_travelled INTEGER CHECK (distance_travelled IS NULL OR distance_travelled > 0),
     fuel_consumption   REAL      NOT NULL CHECK (fuel_consumption > 0),
     fuel_type          TEXT      NOT NULL CHECK (fuel_type IN ('KEROSENE', 'MANPOWER', 'NUCLEAR')),
-    coordinates_id     BIGINT    NOT NULL REFERENCES coordinates (id) ON DELETE RESTRICT
+    coordinates_id     BIGINT    NOT NULL REFERENCES coordinates (id) ON DELETE RESTRICT,
+    CONSTRAINT vehicle_name_uniq UNIQUE (name)
 );
+-- миграция БД, созданных до vehicle_name_uniq: дубликаты имён (COPY-импорт, параллельные create, psql)
+-- переименовываются в "<имя> #<id>" - остаётся ТС с наименьшим id, остальные строки не теряются.
+-- Индекс ограничения заменяет vehicle_name_idx из sql/indexes.sql
+DO
+$$
+    BEGIN
+        IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'vehicle_name_uniq') THEN
+            LOCK TABLE vehicle IN SHARE ROW EXCLUSIVE MODE;
+            UPDATE vehicle v
+            SET name = v.name || ' #' || v.id
+            FROM (SELECT id, row_number() OVER (PARTITION BY name ORDER BY id) AS rn FROM vehicle) d
+            WHERE d.id = v.id
+              AND d.rn > 1;
+            ALTER TABLE vehicle ADD CONSTRAINT vehicle_name_uniq UNIQUE (name);
+            DROP INDEX IF EXISTS vehicle_name_idx;
+        END IF;
+    END
+$$;
 CREATE TABLE IF NOT EXISTS vehicle_import_operation
 (
-    id             BIGSERIAL PRIMARY KEY,
-    status         BOOLEAN,
-    imported_count INTEGER,
-    creation_time  TIMESTAMP NOT NULL DEFAULT now()
+    id              BIGSERIAL PRIMARY KEY,
+    status          BOOLEAN,
+    imported_count  INTEGER,
+    processed_count INTEGER,
+    state           TEXT CHECK (state IN ('QUEUED', 'RUNNING', 'SUCCEEDED', 'FAILED')),
+    mode            TEXT,
+    started_at      TIMESTAMP,
+    finished_at     TIMESTAMP,
+    error_message   TEXT,
+    creation_time   TIMESTAMP NOT NULL DEFAULT now()
 );
+ALTER TABLE vehicle_import_operation
+    ADD COLUMN IF NOT EXISTS processed_count INTEGER,
+    ADD COLUMN IF NOT EXISTS state           TEXT CHECK (state IN ('QUEUED', 'RUNNING', 'SUCCEEDED', 'FAILED')),
+    ADD COLUMN IF NOT EXISTS mode            TEXT,
+    ADD COLUMN IF NOT EXISTS started_at      TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS finished_at     TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS error_message   TEXT;
+
+-- шаг последовательностей = allocationSize в @SequenceGenerator (pooled-оптимизатор Hibernate)
+ALTER SEQUENCE vehicle_id_seq INCREMENT BY 50;
+ALTER SEQUENCE coordinates_id_seq INCREMENT BY 50;
+
+-- индексы под грид - отдельным скриптом (CREATE INDEX CONCURRENTLY нельзя в транзакции): sql/indexes.sql
+
 
+-- Предфильтр полнотекстового режима грида (-Dgrid.text.search=fts): простая SQL-функция
+-- инлайнится планировщиком, поэтому условие обслуживает GIN vehicle_name_fts_idx (sql/indexes.sql)
+CREATE OR REPLACE FUNCTION fn_text_matches(p_text text, p_query text)
+    RETURNS boolean
+    LANGUAGE sql
+    IMMUTABLE
+AS
+$$
+SELECT to_tsvector('simple', p_text) @@ to_tsquery('simple', p_query)
+$$;
 
 -- 1) Любой объект с минимальным distance_travelled (среди NOT NULL)
 CREATE OR REPLACE FUNCTION fn_vehicle_min_distance()
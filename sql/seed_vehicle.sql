@@ -105,6 +105,7 @@ SELECT
       WHERE c2.rn = ((gs - 1) % c2.cnt) + 1
       LIMIT 1
     )
-FROM generate_series(1, :seed_count) AS gs;
+FROM generate_series(1, :seed_count) AS gs
+ON CONFLICT ON CONSTRAINT vehicle_name_uniq DO NOTHING; -- повторный запуск не дублирует 'Seed #N'
 
 COMMIT;
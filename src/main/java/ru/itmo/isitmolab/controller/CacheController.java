@@ -6,11 +6,18 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.hibernate.stat.Statistics;
+import ru.itmo.isitmolab.util.cache.GridPageCache;
+import ru.itmo.isitmolab.util.columnar.VehicleColumnStore;
 import ru.itmo.isitmolab.util.l2.HibernateStatsService;
+import ru.itmo.isitmolab.util.l2.L2CacheConfigCheck;
+import ru.itmo.isitmolab.util.l2.L2CacheStatsInterceptor;
+import ru.itmo.isitmolab.util.metrics.MetricsRegistry;
 import ru.itmo.isitmolab.util.l2.L2CacheStatsToggle;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Path("/cache")
 @Consumes(MediaType.APPLICATION_JSON)
@@ -24,6 +31,18 @@ public class CacheController {
     @Inject
     HibernateStatsService statsService;
 
+    @Inject
+    GridPageCache pageCache;
+
+    @Inject
+    L2CacheConfigCheck configCheck;
+
+    @Inject
+    MetricsRegistry metrics;
+
+    @Inject
+    VehicleColumnStore columnStore;
+
     @GET
     @Path("/logging")
     public Map<String, Object> getLoggingEnabled() {
@@ -59,9 +78,83 @@ public class CacheController {
         body.put("l2CacheMissCount", st.getSecondLevelCacheMissCount());
         body.put("l2CachePutCount", st.getSecondLevelCachePutCount());
         body.put("l2CacheRegionCount", st.getSecondLevelCacheRegionNames() == null ? 0 : st.getSecondLevelCacheRegionNames().length);
+        body.put("regions", statsService.regionStats());
+
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("hitCount", st.getQueryCacheHitCount());
+        query.put("missCount", st.getQueryCacheMissCount());
+        query.put("putCount", st.getQueryCachePutCount());
+        query.put("executionCount", st.getQueryExecutionCount());
+        body.put("queryCache", query);
+
+        Map<String, Object> naturalId = new LinkedHashMap<>();
+        naturalId.put("hitCount", st.getNaturalIdCacheHitCount());
+        naturalId.put("missCount", st.getNaturalIdCacheMissCount());
+        naturalId.put("putCount", st.getNaturalIdCachePutCount());
+        naturalId.put("queryExecutionCount", st.getNaturalIdQueryExecutionCount());
+        body.put("naturalId", naturalId);
+
+        body.put("methods", methodStats());
+        body.put("pageCache", pageCache.stats());
         return Response.ok(body).build();
     }
 
+    @GET
+    @Path("/config-check")
+    public Map<String, Object> checkConfig() {
+        List<String> problems = configCheck.check();
+        return Map.of("ok", problems.isEmpty(), "problems", problems);
+    }
+
+    @GET
+    @Path("/pages/stats")
+    public Map<String, Object> getPageCacheStats() {
+        return pageCache.stats();
+    }
+
+    @POST
+    @Path("/pages/enabled")
+    public Map<String, Object> setPageCacheEnabled(@QueryParam("enabled") Boolean enabled) {
+        if (enabled == null) {
+            throw new BadRequestException("Query param 'enabled' is required");
+        }
+        pageCache.setEnabled(enabled);
+        return Map.of("enabled", pageCache.isEnabled());
+    }
+
+    @POST
+    @Path("/pages/stats/reset")
+    public Response resetPageCacheStats() {
+        pageCache.resetStats();
+        return Response.noContent().build();
+    }
+
+    @GET
+    @Path("/columnar/stats")
+    public Map<String, Object> getColumnStoreStats() {
+        return columnStore.stats();
+    }
+
+    @POST
+    @Path("/columnar/enabled")
+    public Map<String, Object> setColumnStoreEnabled(@QueryParam("enabled") Boolean enabled) {
+        if (enabled == null) {
+            throw new BadRequestException("Query param 'enabled' is required");
+        }
+        columnStore.setEnabled(enabled);
+        return Map.of("enabled", columnStore.isEnabled());
+    }
+
+    @POST
+    @Path("/columnar/rebuild")
+    public Map<String, Object> rebuildColumnStore() {
+        if (!columnStore.isEnabled()) {
+            throw new BadRequestException("Column store is disabled");
+        }
+        columnStore.rebuild();
+        return columnStore.stats();
+    }
+
     @POST
     @Path("/stats/reset")
     public Response resetStats() {
@@ -74,7 +167,24 @@ public class CacheController {
                     .build();
         }
         st.clear();
+        metrics.reset(L2CacheStatsInterceptor.HITS);
+        metrics.reset(L2CacheStatsInterceptor.MISSES);
+        metrics.reset(L2CacheStatsInterceptor.PUTS);
         return Response.noContent().build();
     }
+
+    // метод DAO -> {hits|misses|puts -> {count, mean, p50, p95, p99, max}} (собирается, пока включено логирование)
+    private Map<String, Object> methodStats() {
+        Map<String, Object> out = new TreeMap<>();
+        for (String name : List.of(L2CacheStatsInterceptor.HITS, L2CacheStatsInterceptor.MISSES, L2CacheStatsInterceptor.PUTS)) {
+            String key = name.substring("l2_method_".length());
+            for (MetricsRegistry.Entry e : metrics.entries(name)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> m = (Map<String, Object>) out.computeIfAbsent(e.label("method"), k -> new LinkedHashMap<>());
+                m.put(key, e.getHistogram().summary(1));
+            }
+        }
+        return out;
+    }
 }
 
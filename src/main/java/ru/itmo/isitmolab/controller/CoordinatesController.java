@@ -10,6 +10,7 @@ import ru.itmo.isitmolab.dto.GridTableRequest;
 import ru.itmo.isitmolab.dto.GridTableResponse;
 import ru.itmo.isitmolab.service.CoordinatesService;
 import ru.itmo.isitmolab.util.BeanValidation;
+import ru.itmo.isitmolab.util.sql.SqlBudget;
 
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,8 @@ public class CoordinatesController {
     @Inject
     CoordinatesService service;
 
+    // страница + count + число ТС по координатам страницы одним запросом
+    @SqlBudget(3)
     @POST
     @Path("/query")
     public Response query(GridTableRequest req) {
@@ -31,6 +34,7 @@ public class CoordinatesController {
         return Response.ok(result).build();
     }
 
+    @SqlBudget(2)
     @GET
     @Path("/{id}")
     public CoordinatesDto getOne(@PathParam("id") Long id) {
@@ -0,0 +1,34 @@
+package ru.itmo.isitmolab.controller;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import ru.itmo.isitmolab.util.index.GridIndexAdvisor;
+
+import java.util.Map;
+
+@Path("/indexes")
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+@RequestScoped
+public class IndexAdvisorController {
+
+    @Inject
+    GridIndexAdvisor advisor;
+
+    // формы запросов грида с момента старта/сброса и чего им не хватает из индексов
+    @GET
+    @Path("/advisor")
+    public Map<String, Object> advisor() {
+        return advisor.report();
+    }
+
+    @POST
+    @Path("/advisor/reset")
+    public Response reset() {
+        advisor.reset();
+        return Response.noContent().build();
+    }
+}
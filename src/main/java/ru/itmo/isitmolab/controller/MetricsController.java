@@ -0,0 +1,121 @@
+package ru.itmo.isitmolab.controller;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.hibernate.stat.Statistics;
+import ru.itmo.isitmolab.util.cache.GridPageCache;
+import ru.itmo.isitmolab.util.l2.HibernateStatsService;
+import ru.itmo.isitmolab.util.l2.L2RegionStats;
+import ru.itmo.isitmolab.util.metrics.InstrumentationInterceptor;
+import ru.itmo.isitmolab.util.metrics.MetricsRegistry;
+import ru.itmo.isitmolab.util.metrics.PrometheusWriter;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Текстовые метрики для локального Prometheus: scrape_configs -> metrics_path: /api/metrics
+@Path("/metrics")
+@RequestScoped
+public class MetricsController {
+
+    private static final Logger log = Logger.getLogger(MetricsController.class.getName());
+
+    @Inject
+    HibernateStatsService statsService;
+
+    @Inject
+    GridPageCache pageCache;
+
+    @Inject
+    MetricsRegistry metrics;
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response scrape() {
+        PrometheusWriter out = new PrometheusWriter();
+        try {
+            writeHibernate(out, statsService.stats());
+        } catch (Exception e) {
+            log.log(Level.FINE, "Hibernate statistics unavailable", e); // остальные метрики всё равно отдаём
+        }
+        writePageCache(out);
+        metrics.writePrometheus(out);
+        return Response.ok(out.toString()).type(PrometheusWriter.CONTENT_TYPE).build();
+    }
+
+    // метод -> {latencyMs, sqlStatements, rows} с count/mean/p50/p95/p99/max; сортировка по p99 времени
+    @GET
+    @Path("/methods")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> methods() {
+        Map<String, Map<String, Object>> byMethod = new LinkedHashMap<>();
+        metrics.entries(InstrumentationInterceptor.LATENCY).stream()
+                .sorted(Comparator.comparingLong((MetricsRegistry.Entry e) -> e.getHistogram().quantile(0.99)).reversed())
+                .forEach(e -> byMethod.computeIfAbsent(e.label("method"), k -> new LinkedHashMap<>())
+                        .put("latencyMs", e.getHistogram().summary(1_000)));
+        put(byMethod, InstrumentationInterceptor.SQL, "sqlStatements");
+        put(byMethod, InstrumentationInterceptor.ROWS, "rows");
+        return Map.of("methods", byMethod);
+    }
+
+    @POST
+    @Path("/methods/reset")
+    public Response resetMethods() {
+        metrics.reset(InstrumentationInterceptor.LATENCY);
+        metrics.reset(InstrumentationInterceptor.SQL);
+        metrics.reset(InstrumentationInterceptor.ROWS);
+        return Response.noContent().build();
+    }
+
+    private void put(Map<String, Map<String, Object>> byMethod, String metric, String key) {
+        for (MetricsRegistry.Entry e : metrics.entries(metric)) {
+            byMethod.computeIfAbsent(e.label("method"), k -> new LinkedHashMap<>())
+                    .put(key, e.getHistogram().summary(1));
+        }
+    }
+
+    private void writeHibernate(PrometheusWriter out, Statistics st) {
+        out.counter("l2_cache_hits_total", "L2 cache hits", st.getSecondLevelCacheHitCount())
+                .counter("l2_cache_misses_total", "L2 cache misses", st.getSecondLevelCacheMissCount())
+                .counter("l2_cache_puts_total", "L2 cache puts", st.getSecondLevelCachePutCount());
+
+        // сэмплы одной метрики должны идти подряд, поэтому цикл по регионам - внутри каждой метрики
+        List<L2RegionStats> regions = statsService.regionStats();
+        regions.forEach(r -> out.counter("l2_region_hits_total", "L2 cache hits per region", r.getHitCount(), "region", r.getRegion()));
+        regions.forEach(r -> out.counter("l2_region_misses_total", "L2 cache misses per region", r.getMissCount(), "region", r.getRegion()));
+        regions.forEach(r -> out.counter("l2_region_puts_total", "L2 cache puts per region", r.getPutCount(), "region", r.getRegion()));
+        regions.stream().filter(r -> r.getEvictionCount() >= 0)
+                .forEach(r -> out.counter("l2_region_evictions_total", "Infinispan evictions per region", r.getEvictionCount(), "region", r.getRegion()));
+        regions.forEach(r -> out.gauge("l2_region_elements", "Entries in memory per region", r.getElementCountInMemory(), "region", r.getRegion()));
+        regions.stream().filter(r -> r.getSizeInMemory() >= 0)
+                .forEach(r -> out.gauge("l2_region_size_bytes", "Region size in memory as reported by Hibernate", r.getSizeInMemory(), "region", r.getRegion()));
+
+        out.counter("hibernate_query_cache_hits_total", "Query cache hits", st.getQueryCacheHitCount())
+                .counter("hibernate_query_cache_misses_total", "Query cache misses", st.getQueryCacheMissCount())
+                .counter("hibernate_query_cache_puts_total", "Query cache puts", st.getQueryCachePutCount())
+                .counter("hibernate_naturalid_cache_hits_total", "Natural id cache hits", st.getNaturalIdCacheHitCount())
+                .counter("hibernate_naturalid_cache_misses_total", "Natural id cache misses", st.getNaturalIdCacheMissCount())
+                .counter("hibernate_naturalid_cache_puts_total", "Natural id cache puts", st.getNaturalIdCachePutCount())
+                .counter("hibernate_naturalid_queries_total", "Natural id resolution queries", st.getNaturalIdQueryExecutionCount())
+                .counter("hibernate_queries_total", "Executed HQL/Criteria queries", st.getQueryExecutionCount())
+                .counter("hibernate_statements_prepared_total", "Prepared JDBC statements", st.getPrepareStatementCount());
+    }
+
+    private void writePageCache(PrometheusWriter out) {
+        Map<String, Object> s = pageCache.stats();
+        out.gauge("grid_page_cache_entries", "Cached grid pages", ((Number) s.get("size")).doubleValue())
+                .counter("grid_page_cache_hits_total", "Grid page cache hits", ((Number) s.get("hitCount")).doubleValue())
+                .counter("grid_page_cache_misses_total", "Grid page cache misses", ((Number) s.get("missCount")).doubleValue())
+                .counter("grid_page_cache_evictions_total", "Grid page cache evictions", ((Number) s.get("evictionCount")).doubleValue());
+    }
+}
@@ -6,17 +6,25 @@ import jakarta.json.bind.Jsonb;
 import jakarta.json.bind.JsonbBuilder;
 import jakarta.json.bind.JsonbException;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import ru.itmo.isitmolab.dto.GridTableRequest;
 import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+import ru.itmo.isitmolab.model.VehicleImportOperation;
+import ru.itmo.isitmolab.service.VehicleImportJobService;
 import ru.itmo.isitmolab.service.VehicleImportService;
 import ru.itmo.isitmolab.service.VehicleService;
 import ru.itmo.isitmolab.util.BeanValidation;
+import ru.itmo.isitmolab.util.VehicleExportFormat;
+import ru.itmo.isitmolab.util.VehicleImportReader;
+import ru.itmo.isitmolab.util.sql.SqlBudget;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +42,8 @@ public class VehicleController {
     VehicleService vehicleService;
     @Inject
     VehicleImportService vehicleImportService;
+    @Inject
+    VehicleImportJobService vehicleImportJobService;
 
     @POST
     public Response createVehicle(VehicleDto dto) {
@@ -52,6 +62,7 @@ public class VehicleController {
         return Response.noContent().build();
     }
 
+    @SqlBudget(2)
     @GET
     @Path("/{id:\\d+}")
     public Response getVehicle(@PathParam("id") Long id) {
@@ -66,6 +77,8 @@ public class VehicleController {
         return Response.status(Response.Status.NO_CONTENT).build();
     }
 
+    // id страницы + строки с координатами + count (при попадании в кеш страниц - 0)
+    @SqlBudget(3)
     @POST
     @Path("/query")
     public Response queryVehicles(GridTableRequest req) {
@@ -74,12 +87,90 @@ public class VehicleController {
         return Response.ok(result).build();
     }
 
+    // Выгрузка всей отфильтрованной выборки (filterModel/sortModel как у /query, startRow/endRow/курсор игнорируются)
+    // потоком: ?format=json (по умолчанию), ndjson, csv - любой из них принимается обратно /vehicle/import
+    @POST
+    @Path("/export")
+    @Produces({MediaType.APPLICATION_JSON, "application/x-ndjson", "text/csv"})
+    public Response exportVehicles(GridTableRequest req, @QueryParam("format") String format) {
+        return export(req != null ? req : new GridTableRequest(), format);
+    }
+
+    // то же для ссылки на скачивание: ?request=<GridTableRequest в JSON>&format=...
+    @GET
+    @Path("/export")
+    @Produces({MediaType.APPLICATION_JSON, "application/x-ndjson", "text/csv"})
+    public Response exportVehicles(@QueryParam("request") String request, @QueryParam("format") String format) {
+        GridTableRequest req = new GridTableRequest();
+        if (request != null && !request.isBlank()) {
+            try (Jsonb jsonb = JsonbBuilder.create()) {
+                req = jsonb.fromJson(request, GridTableRequest.class);
+            } catch (Exception e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(Map.of("message", "Параметр request не является корректным JSON"))
+                        .type(MediaType.APPLICATION_JSON_TYPE)
+                        .build();
+            }
+        }
+        return export(req, format);
+    }
+
+    private Response export(GridTableRequest req, String format) {
+        VehicleExportFormat f = VehicleExportFormat.parse(format, VehicleExportFormat.JSON);
+        if (f == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("message", "format должен быть одним из: json, ndjson, csv"))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build();
+        }
+        // строки пишутся уже после выхода из метода, по мере чтения курсора
+        StreamingOutput body = out -> vehicleService.exportVehicles(req, f, out);
+        return Response.ok(body, f.getMediaType() + "; charset=UTF-8")
+                .header("Content-Disposition", "attachment; filename=\"vehicles." + f.getExtension() + "\"")
+                .build();
+    }
+
+    // Формат файла - ?format=json|ndjson|csv (как у /export), без него - по Content-Type, иначе JSON-массив
     @POST
     @Path("/import")
-    @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM}) // двоичные данные без указания конкретного формата
-    public Response importVehicles(InputStream importStream) {
+    @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM, // двоичные данные без указания конкретного формата
+            "application/x-ndjson", "text/csv"})
+    public Response importVehicles(InputStream importStream,
+                                   @QueryParam("mode") String mode,
+                                   @QueryParam("chunkSize") Integer chunkSize,
+                                   @QueryParam("async") @DefaultValue("false") boolean async,
+                                   @QueryParam("format") String format,
+                                   @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType) {
+        VehicleExportFormat f = VehicleExportFormat.parse(format,
+                VehicleExportFormat.fromMediaType(contentType, VehicleExportFormat.JSON));
+        if (f == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("message", "format должен быть одним из: json, ndjson, csv"))
+                    .build();
+        }
         try {
-            List<VehicleImportItemDto> items = parseImportFile(importStream);
+            if (async) {
+                // фоновая задача: сразу 202 + id, прогресс - GET /vehicle/import/{jobId} и события по WebSocket;
+                // mode - stream (по умолчанию) или copy, mode=json вместе с async=true - 400
+                String jobMode = mode != null ? mode.toLowerCase() : null;
+                VehicleImportOperation op = vehicleImportJobService.submit(importStream, jobMode, chunkSize, f);
+                return Response.status(Response.Status.ACCEPTED)
+                        .entity(Map.of("jobId", op.getId(), "state", op.getState()))
+                        .build();
+            }
+            if ("stream".equalsIgnoreCase(mode)) {
+                // потоковый режим: файл не читается в память целиком, коммит пачками
+                VehicleImportOperation op = vehicleImportService.importVehiclesStreaming(importStream, chunkSize, f);
+                return Response.ok(Map.of("operationId", op.getId(), "importedCount", op.getImportedCount())).build();
+            }
+            if ("copy".equalsIgnoreCase(mode)) {
+                // COPY во временную таблицу + set-based перенос, для очень больших файлов
+                VehicleImportOperation op = vehicleImportService.importVehiclesCopy(importStream, f);
+                return Response.ok(Map.of("operationId", op.getId(), "importedCount", op.getImportedCount())).build();
+            }
+            List<VehicleImportItemDto> items = f == VehicleExportFormat.JSON
+                    ? parseImportFile(importStream)
+                    : readImportFile(importStream, f);
             vehicleImportService.importVehicles(items);
             return Response.ok().build();
         } catch (BadRequestException e) {
@@ -89,6 +180,16 @@ public class VehicleController {
         }
     }
 
+    @GET
+    @Path("/import/{jobId:\\d+}")
+    public Response getImportJob(@PathParam("jobId") Long jobId) {
+        return vehicleImportService.getJob(jobId)
+                .map(job -> Response.ok(job).build())
+                .orElseGet(() -> Response.status(Response.Status.NOT_FOUND)
+                        .entity(Map.of("message", "Задача импорта не найдена"))
+                        .build());
+    }
+
     @GET
     @Path("/import/history")
     @Produces(MediaType.APPLICATION_JSON)
@@ -126,4 +227,19 @@ public class VehicleController {
         }
     }
 
+    // NDJSON/CSV для обычного режима (весь файл - одна транзакция): тот же разбор, что у потокового импорта
+    private List<VehicleImportItemDto> readImportFile(InputStream importStream, VehicleExportFormat format) {
+        List<VehicleImportItemDto> items = new ArrayList<>();
+        try (VehicleImportReader reader = VehicleImportReader.open(importStream, format)) {
+            List<VehicleImportItemDto> chunk;
+            while (!(chunk = reader.nextChunk(1_000)).isEmpty()) {
+                items.addAll(chunk);
+            }
+        }
+        if (items.isEmpty()) {
+            throw new BadRequestException("Файл не содержит данных для импорта");
+        }
+        return items;
+    }
+
 }
@@ -8,6 +8,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.service.VehicleSpecialService;
+import ru.itmo.isitmolab.util.aggregate.VehicleAggregates;
 
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,9 @@ public class VehicleSpecialController {
     @Inject
     VehicleSpecialService service;
 
+    @Inject
+    VehicleAggregates aggregates;
+
     @GET
     @Path("/min-distance")
     public Response minDistance() {
@@ -55,4 +59,19 @@ public class VehicleSpecialController {
         if (min > max) throw new BadRequestException("min must be <= max");
         return service.listByEnginePowerBetween(min, max);
     }
+
+    // состояние агрегатов в памяти для min-distance / count-fuel-gt
+    @GET
+    @Path("/aggregates")
+    public Map<String, Object> aggregatesStats() {
+        return aggregates.stats();
+    }
+
+    // после правок БД мимо приложения (psql, миграции)
+    @POST
+    @Path("/aggregates/rebuild")
+    public Map<String, Object> rebuildAggregates() {
+        aggregates.rebuild();
+        return aggregates.stats();
+    }
 }
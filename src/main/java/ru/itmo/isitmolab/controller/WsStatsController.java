@@ -0,0 +1,36 @@
+package ru.itmo.isitmolab.controller;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import ru.itmo.isitmolab.ws.VehicleWsService;
+import ru.itmo.isitmolab.ws.WsSessionStats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Path("/ws")
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+@RequestScoped
+public class WsStatsController {
+
+    @Inject
+    VehicleWsService wsHub;
+
+    @GET
+    @Path("/stats")
+    public Map<String, Object> getStats() {
+        List<WsSessionStats> sessions = wsHub.sessionStats();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("sessionCount", sessions.size());
+        body.put("queuedFrames", sessions.stream().mapToInt(WsSessionStats::getQueueDepth).sum());
+        body.put("droppedFrames", sessions.stream().mapToLong(WsSessionStats::getDropped).sum());
+        body.put("evictedSessions", wsHub.getEvictedCount());
+        body.put("sessions", sessions);
+        return body;
+    }
+}
@@ -3,21 +3,29 @@ package ru.itmo.isitmolab.dao;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import jakarta.persistence.criteria.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.dto.GridTableSortModel;
 import ru.itmo.isitmolab.model.Coordinates;
 import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
 import ru.itmo.isitmolab.util.l2.L2CacheStats;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
 
 import java.util.*;
 
 @L2CacheStats
+@Instrumented
 @ApplicationScoped
 public class CoordinatesDao {
 
     @PersistenceContext
     EntityManager em;
 
+    private static final int PAIRS_PER_QUERY = 1_000; // 2 bind-параметра на пару
+
     public void save(Coordinates c) {
         if (c.getId() == null) {
             em.persist(c);
@@ -45,6 +53,9 @@ public class CoordinatesDao {
         return cnt != null && cnt > 0;
     }
 
+    // дефолтная сортировка грида (без sortModel)
+    public static final List<GridTableSortModel> DEFAULT_SORT = List.of(new GridTableSortModel("id", "asc"));
+
     public List<Coordinates> findPageByGrid(GridTableRequest req) {
         final int pageSize = Math.max(1, req.endRow - req.startRow);
         final int first = Math.max(0, req.startRow);
@@ -53,7 +64,7 @@ public class CoordinatesDao {
         CriteriaQuery<Coordinates> cq = cb.createQuery(Coordinates.class);
         Root<Coordinates> root = cq.from(Coordinates.class);
 
-        List<Predicate> predicates = GridTablePredicateBuilder.build(cb, root, req.filterModel);
+        List<Predicate> predicates = GridTablePredicateBuilder.filter(root, req).toPredicates(cb, root);
         if (!predicates.isEmpty()) cq.where(predicates.toArray(new Predicate[0]));
 
         if (req.sortModel != null && !req.sortModel.isEmpty()) {
@@ -80,13 +91,21 @@ public class CoordinatesDao {
         CriteriaQuery<Long> cnt = cb.createQuery(Long.class);
         Root<Coordinates> root = cnt.from(Coordinates.class);
 
-        List<Predicate> preds = GridTablePredicateBuilder.build(cb, root, req.filterModel);
+        List<Predicate> preds = GridTablePredicateBuilder.filter(root, req).toPredicates(cb, root);
         cnt.select(cb.count(root));
         if (!preds.isEmpty()) cnt.where(preds.toArray(new Predicate[0]));
 
         return em.createQuery(cnt).getSingleResult();
     }
 
+    // оценка планировщика PostgreSQL (без фильтров), обновляется ANALYZE/autovacuum
+    public long estimateCount() {
+        Number n = (Number) em.createNativeQuery(
+                        "select reltuples::bigint from pg_class where oid = 'coordinates'::regclass")
+                .getSingleResult();
+        return n == null ? -1 : n.longValue();
+    }
+
     public Coordinates findOrCreateByXY(Double x, Float y) {
 
         // попытка найти уже существующие координаты
@@ -133,6 +152,79 @@ public class CoordinatesDao {
         return result;
     }
 
+    // Пакетный вариант findOrCreateByXY для импорта: на каждые PAIRS_PER_QUERY различных пар
+    // один многострочный INSERT ... ON CONFLICT DO NOTHING RETURNING и один SELECT для уже существовавших.
+    // Возвращает ссылки (getReference) - для привязки к Vehicle сами координаты грузить не нужно
+    public Map<XY, Coordinates> findOrCreateAll(Collection<XY> pairs) {
+        if (pairs == null || pairs.isEmpty()) return Map.of();
+        List<XY> all = new ArrayList<>(new LinkedHashSet<>(pairs));
+        Map<XY, Coordinates> out = new HashMap<>(all.size() * 2);
+
+        for (int from = 0; from < all.size(); from += PAIRS_PER_QUERY) {
+            List<XY> part = all.subList(from, Math.min(all.size(), from + PAIRS_PER_QUERY));
+
+            // новые пары - сразу с id; конфликтующие (уже были или вставлены параллельно) RETURNING не вернёт
+            putRows(out, bindPairs(em.createNativeQuery(
+                    "INSERT INTO coordinates (x, y) VALUES " + placeholders(part.size()) +
+                            " ON CONFLICT (x, y) DO NOTHING RETURNING id, x, y"), part).getResultList());
+
+            List<XY> missing = part.stream().filter(p -> !out.containsKey(p)).toList();
+            if (!missing.isEmpty()) {
+                putRows(out, bindPairs(em.createNativeQuery(
+                        "SELECT id, x, y FROM coordinates WHERE (x, y) IN (" + placeholders(missing.size()) + ")"),
+                        missing).getResultList());
+            }
+
+            for (XY p : part) {
+                if (!out.containsKey(p)) {
+                    // Теоретически сюда попасть нельзя
+                    throw new IllegalStateException("Coordinates not found after upsert for x=" + p.getX() + ", y=" + p.getY());
+                }
+            }
+        }
+        return out;
+    }
+
+    private static String placeholders(int pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("(?").append(2 * i + 1).append(", ?").append(2 * i + 2).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static Query bindPairs(Query q, List<XY> pairs) {
+        for (int i = 0; i < pairs.size(); i++) {
+            q.setParameter(2 * i + 1, pairs.get(i).getX());
+            q.setParameter(2 * i + 2, pairs.get(i).getY());
+        }
+        return q;
+    }
+
+    private void putRows(Map<XY, Coordinates> out, List<?> rows) {
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            Long id = ((Number) r[0]).longValue();
+            XY key = new XY(((Number) r[1]).doubleValue(), ((Number) r[2]).floatValue());
+            out.put(key, em.getReference(Coordinates.class, id));
+        }
+    }
+
+    // Ключ (x, y) для пакетного поиска координат
+    @Getter
+    @EqualsAndHashCode
+    public static final class XY {
+        private final double x;
+        private final float y;
+
+        public XY(double x, float y) {
+            // -0.0 и 0.0 в БД равны, а в equals - нет
+            this.x = x + 0.0d;
+            this.y = y + 0.0f;
+        }
+    }
+
     public Map<Long, Integer> countVehiclesForCoordinatesIds(List<Long> ids) {
         if (ids == null || ids.isEmpty()) return Map.of();
         List<Object[]> rows = em.createQuery(
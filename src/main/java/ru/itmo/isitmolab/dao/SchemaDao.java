@@ -0,0 +1,55 @@
+package ru.itmo.isitmolab.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Каталог PostgreSQL: какие индексы, расширения и функции реально есть в БД (для GridIndexAdvisor)
+@ApplicationScoped
+public class SchemaDao {
+
+    @PersistenceContext
+    EntityManager em;
+
+    // имя индекса -> определение (pg_get_indexdef), только валидные (CONCURRENTLY мог упасть посередине)
+    public Map<String, String> indexDefinitions(List<String> tables) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> res = em.createNativeQuery("""
+                        select i.indexname, i.indexdef
+                        from pg_indexes i
+                                 join pg_class c on c.relname = i.indexname
+                                 join pg_index x on x.indexrelid = c.oid
+                        where i.schemaname = current_schema()
+                          and i.tablename in (:tables)
+                          and x.indisvalid
+                        order by i.tablename, i.indexname
+                        """)
+                .setParameter("tables", tables)
+                .getResultList();
+        Map<String, String> out = new LinkedHashMap<>();
+        for (Object[] r : res) out.put((String) r[0], (String) r[1]);
+        return out;
+    }
+
+    public boolean extensionInstalled(String name) {
+        return (Boolean) em.createNativeQuery("select exists(select 1 from pg_extension where extname = :n)")
+                .setParameter("n", name)
+                .getSingleResult();
+    }
+
+    public boolean functionExists(String name) {
+        return (Boolean) em.createNativeQuery("""
+                        select exists(select 1
+                                      from pg_proc p
+                                               join pg_namespace n on n.oid = p.pronamespace
+                                      where p.proname = :n
+                                        and n.nspname = current_schema())
+                        """)
+                .setParameter("n", name)
+                .getSingleResult();
+    }
+}
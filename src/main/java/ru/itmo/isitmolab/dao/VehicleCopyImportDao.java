@@ -0,0 +1,205 @@
+package ru.itmo.isitmolab.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Быстрый импорт через COPY: строки пишутся потоком во временную staging-таблицу,
+// затем переносятся в coordinates/vehicle set-based запросами в той же транзакции
+@ApplicationScoped
+public class VehicleCopyImportDao {
+
+    @PersistenceContext
+    EntityManager em;
+
+    // Всё выполняется на одном JDBC-соединении текущей JTA-транзакции
+    public <T> T inStage(Function<Stage, T> work) {
+        return em.unwrap(Session.class).doReturningWork(conn -> {
+            try (Stage stage = new Stage(conn)) {
+                return work.apply(stage);
+            }
+        });
+    }
+
+    public static class Stage implements AutoCloseable {
+
+        private final Connection conn;
+        private PGCopyOutputStream copy;
+        private Writer out;
+
+        Stage(Connection conn) throws SQLException {
+            this.conn = conn;
+            try (Statement st = conn.createStatement()) {
+                st.execute("""
+                        CREATE TEMP TABLE vehicle_import_stage
+                        (
+                            row_no             INTEGER NOT NULL,
+                            name               TEXT    NOT NULL,
+                            type               TEXT    NOT NULL,
+                            engine_power       INTEGER,
+                            number_of_wheels   INTEGER NOT NULL,
+                            capacity           INTEGER,
+                            distance_travelled INTEGER,
+                            fuel_consumption   REAL    NOT NULL,
+                            fuel_type          TEXT    NOT NULL,
+                            x                  DOUBLE PRECISION NOT NULL,
+                            y                  REAL    NOT NULL
+                        ) ON COMMIT DROP
+                        """);
+            }
+        }
+
+        // строка уже провалидирована (BeanValidation), rowNo - номер записи в файле
+        public void write(int rowNo, VehicleImportItemDto item) {
+            try {
+                if (out == null) {
+                    copy = new PGCopyOutputStream(conn.unwrap(PGConnection.class),
+                            "COPY vehicle_import_stage FROM STDIN (FORMAT csv)", 1 << 16);
+                    out = new BufferedWriter(new OutputStreamWriter(copy, UTF_8), 1 << 16);
+                }
+                out.write(Integer.toString(rowNo));
+                out.write(',');
+                csv(item.getName());
+                out.write(',');
+                csv(item.getType());
+                out.write(',');
+                num(item.getEnginePower());
+                out.write(',');
+                num(item.getNumberOfWheels());
+                out.write(',');
+                num(item.getCapacity());
+                out.write(',');
+                num(item.getDistanceTravelled());
+                out.write(',');
+                num(item.getFuelConsumption());
+                out.write(',');
+                csv(item.getFuelType());
+                out.write(',');
+                num(item.getCoordinates().getX());
+                out.write(',');
+                num(item.getCoordinates().getY());
+                out.write('\n');
+            } catch (IOException | SQLException e) {
+                throw new PersistenceException("COPY into staging table failed", e);
+            }
+        }
+
+        // завершить COPY; возвращает число загруженных строк
+        public long endCopy() {
+            if (out == null) return 0;
+            try {
+                out.close(); // close у PGCopyOutputStream делает endCopy
+                return copy.getHandledRowCount();
+            } catch (IOException e) {
+                throw new PersistenceException("COPY into staging table failed", e);
+            } finally {
+                out = null;
+            }
+        }
+
+        // Конфликты имён: {row_no, name, first_row_no | null}. first_row_no != null - дубликат внутри файла,
+        // null - имя уже есть в vehicle
+        public List<Object[]> findNameConflicts(int limit) {
+            String sql = """
+                    SELECT row_no, name, first_row_no
+                    FROM (SELECT row_no, name, min(row_no) OVER (PARTITION BY name) AS first_row_no
+                          FROM vehicle_import_stage) s
+                    WHERE row_no <> first_row_no
+                    UNION ALL
+                    SELECT s.row_no, s.name, NULL
+                    FROM vehicle_import_stage s
+                    WHERE EXISTS (SELECT 1 FROM vehicle v WHERE v.name = s.name)
+                    ORDER BY 1
+                    LIMIT ?
+                    """;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, limit);
+                List<Object[]> out = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int first = rs.getInt(3);
+                        out.add(new Object[]{rs.getInt(1), rs.getString(2), rs.wasNull() ? null : first});
+                    }
+                }
+                return out;
+            } catch (SQLException e) {
+                throw new PersistenceException("Name check on staging table failed", e);
+            }
+        }
+
+        // Блокировка от параллельных вставок в vehicle до конца транзакции:
+        // проверка уникальности имён и merge должны видеть одно и то же состояние таблицы
+        public void lockVehicleTable() {
+            execute("LOCK TABLE vehicle IN SHARE ROW EXCLUSIVE MODE");
+        }
+
+        // coordinates: новые пары одним INSERT ... SELECT DISTINCT, vehicle: один INSERT ... SELECT с join по (x, y)
+        public int merge() {
+            execute("""
+                    INSERT INTO coordinates (x, y)
+                    SELECT DISTINCT x, y FROM vehicle_import_stage
+                    ON CONFLICT (x, y) DO NOTHING
+                    """);
+            return execute("""
+                    INSERT INTO vehicle (version, name, type, engine_power, number_of_wheels, capacity,
+                                         distance_travelled, fuel_consumption, fuel_type, coordinates_id)
+                    SELECT 0, s.name, s.type, s.engine_power, s.number_of_wheels, s.capacity,
+                           s.distance_travelled, s.fuel_consumption, s.fuel_type, c.id
+                    FROM vehicle_import_stage s
+                             JOIN coordinates c ON c.x = s.x AND c.y = s.y
+                    ORDER BY s.row_no
+                    """);
+        }
+
+        private int execute(String sql) {
+            try (Statement st = conn.createStatement()) {
+                return st.executeUpdate(sql);
+            } catch (SQLException e) {
+                throw new PersistenceException("Staging merge failed", e);
+            }
+        }
+
+        private void csv(String s) throws IOException {
+            if (s == null) return; // пустое поле без кавычек = NULL
+            out.write('"');
+            out.write(s.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        private void num(Number n) throws IOException {
+            if (n != null) out.write(n.toString());
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (out != null) {
+                // COPY не дописан (ошибка посреди чтения) - отменяем, иначе соединение останется в режиме COPY
+                try {
+                    copy.cancelCopy();
+                } finally {
+                    out = null;
+                }
+            }
+        }
+    }
+}
@@ -3,15 +3,27 @@ package ru.itmo.isitmolab.dao;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.*;
+import org.hibernate.Session;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import ru.itmo.isitmolab.dto.GridTablePage;
 import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.dto.GridTableSortModel;
+import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.model.Coordinates;
+import ru.itmo.isitmolab.model.FuelType;
 import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.model.VehicleType;
 import ru.itmo.isitmolab.util.l2.L2CacheStats;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
+import ru.itmo.isitmolab.util.GridTableCursor;
 import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
 
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
 @L2CacheStats
+@Instrumented
 @ApplicationScoped
 public class VehicleDao {
 
@@ -30,6 +42,10 @@ public class VehicleDao {
         em.flush();
     }
 
+    public void clear() {
+        em.clear();
+    }
+
     public Optional<Vehicle> findById(Long id) {
         if (id == null)
             return Optional.empty();
@@ -62,43 +78,56 @@ public class VehicleDao {
             em.remove(res);
     }
 
-    public List<Vehicle> findPageByGrid(GridTableRequest req) {
+    private static final int NAMES_PER_QUERY = 5_000;
+    // JAVA_OPTS="-Dvehicle.export.fetch.size=5000"
+    private static final int EXPORT_FETCH_SIZE = Integer.getInteger("vehicle.export.fetch.size", 5_000);
+
+    // дефолтная сортировка грида (без sortModel)
+    public static final List<GridTableSortModel> DEFAULT_SORT = List.of(
+            new GridTableSortModel("creationTime", "desc"),
+            new GridTableSortModel("id", "desc")
+    );
+
+    public GridTablePage<Vehicle> findPageByGrid(GridTableRequest req) {
         final int pageSize = Math.max(1, req.endRow - req.startRow); // сколько записей на странице
         final int offset = Math.max(0, req.startRow); // с какого индекса начать
+        final boolean keyset = req.isKeysetMode();
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
+        HibernateCriteriaBuilder cb = em.unwrap(Session.class).getCriteriaBuilder();
 
-        // запрос только по ID (лёгкий запрос для сортировки/фильтров + пагинации)
-        CriteriaQuery<Long> cquery = cb.createQuery(Long.class);
+        // запрос по ID + ключам сортировки (лёгкий запрос для сортировки/фильтров + пагинации)
+        // ключи сортировки последней строки нужны для курсора следующей страницы
+        CriteriaQuery<Tuple> cquery = cb.createTupleQuery();
         Root<Vehicle> idRoot = cquery.from(Vehicle.class);
 
         // Фильтры из filterModel (WHERE)
-        List<Predicate> predicates = GridTablePredicateBuilder.build(cb, idRoot, req.filterModel);
+        List<Predicate> predicates = GridTablePredicateBuilder.filter(idRoot, req).toPredicates(cb, idRoot);
+
+        // Сортировка sortModel (+ id) и keyset-условие
+        List<Path<?>> keyPaths = new ArrayList<>();
+        List<GridTableSortModel> keys = applySortAndSeek(cb, cquery, idRoot, req, predicates, keyPaths);
         if (!predicates.isEmpty())
             cquery.where(predicates.toArray(new Predicate[0]));
 
-        // Сортировка sortModel
-        if (req.sortModel != null && !req.sortModel.isEmpty()) {
-            List<Order> orders = new ArrayList<>();
-            req.sortModel.forEach(s -> {
-                Path<?> p = GridTablePredicateBuilder.resolvePath(idRoot, s.getColId());
-                orders.add("desc".equalsIgnoreCase(s.getSort()) ? cb.desc(p) : cb.asc(p));
-            });
-            cquery.orderBy(orders);
-        } else {
-            cquery.orderBy(cb.desc(idRoot.get("creationTime")), cb.desc(idRoot.get("id")));
-        }
+        List<Selection<?>> select = new ArrayList<>(keyPaths.size() + 1);
+        select.add(idRoot.get("id"));
+        select.addAll(keyPaths);
+        cquery.multiselect(select);
 
-        cquery.select(idRoot.get("id")); // Возвращается только столбец id
+        // Пагинация на стороне БД (OFFSET/LIMIT или только LIMIT для keyset), получаем ид
+        TypedQuery<Tuple> idQuery = em.createQuery(cquery).setMaxResults(pageSize);
+        if (!keyset)
+            idQuery.setFirstResult(offset);
+        List<Tuple> tuples = idQuery.getResultList();
 
-        // Пагинация на стороне БД (OFFSET/LIMIT), получаем ид
-        List<Long> ids = em.createQuery(cquery)
-                .setFirstResult(offset)
-                .setMaxResults(pageSize)
-                .getResultList();
+        if (tuples.isEmpty())
+            return new GridTablePage<>(List.of(), null, null);
+
+        List<Long> ids = new ArrayList<>(tuples.size());
+        for (Tuple t : tuples)
+            ids.add(t.get(0, Long.class));
 
-        if (ids.isEmpty())
-            return List.of();
+        String nextCursor = nextCursor(tuples, pageSize, keys, 1);
 
         // грузим полноценные сущности по найденным id с графом
         EntityGraph<Vehicle> graph = getWithCoordsGraph();
@@ -116,7 +145,134 @@ public class VehicleDao {
             rank.put(ids.get(i), i);
         items.sort(Comparator.comparingInt(v -> rank.getOrDefault(v.getId(), Integer.MAX_VALUE)));
 
-        return items;
+        return new GridTablePage<>(items, nextCursor, null);
+    }
+
+    // Альтернативный путь: страница + coordinates + count(*) over() одним SQL-запросом,
+    // строки сразу проецируются в VehicleDto без managed-сущностей и без пересортировки в Java
+    public GridTablePage<VehicleDto> findDtoPageByGrid(GridTableRequest req) {
+        final int pageSize = Math.max(1, req.endRow - req.startRow);
+        final int offset = Math.max(0, req.startRow);
+        final boolean keyset = req.isKeysetMode();
+
+        HibernateCriteriaBuilder cb = em.unwrap(Session.class).getCriteriaBuilder();
+        CriteriaQuery<Tuple> cquery = cb.createTupleQuery();
+        Root<Vehicle> root = cquery.from(Vehicle.class);
+        // resolvePath переиспользует этот join для фильтров/сортировки по coordinates.*
+        Join<Vehicle, Coordinates> coords = root.join("coordinates", JoinType.LEFT);
+
+        List<Predicate> predicates = GridTablePredicateBuilder.filter(root, req).toPredicates(cb, root);
+        List<Path<?>> keyPaths = new ArrayList<>();
+        List<GridTableSortModel> keys = applySortAndSeek(cb, cquery, root, req, predicates, keyPaths);
+        if (!predicates.isEmpty())
+            cquery.where(predicates.toArray(new Predicate[0]));
+
+        List<Selection<?>> select = new ArrayList<>(List.of(
+                root.get("id"), root.get("name"), root.get("creationTime"), root.get("type"),
+                root.get("enginePower"), root.get("numberOfWheels"), root.get("capacity"),
+                root.get("distanceTravelled"), root.get("fuelConsumption"), root.get("fuelType"),
+                coords.get("id"), coords.get("x"), coords.get("y")
+        ));
+        final int keysFrom = select.size();
+        select.addAll(keyPaths);
+        // в keyset-режиме окно видит только строки после курсора - общий итог так не получить
+        final int totalIdx = select.size();
+        if (!keyset)
+            select.add(cb.count(root.get("id"), cb.createWindow()));
+        cquery.multiselect(select);
+
+        TypedQuery<Tuple> query = em.createQuery(cquery).setMaxResults(pageSize);
+        if (!keyset)
+            query.setFirstResult(offset);
+        List<Tuple> tuples = query.getResultList();
+
+        if (tuples.isEmpty())
+            return new GridTablePage<>(List.of(), null, null); // за концом выборки окно ничего не вернёт
+
+        List<VehicleDto> rows = new ArrayList<>(tuples.size());
+        for (Tuple t : tuples) {
+            rows.add(VehicleDto.builder()
+                    .id(t.get(0, Long.class))
+                    .name(t.get(1, String.class))
+                    .creationTime(t.get(2, LocalDateTime.class))
+                    .type(t.get(3, VehicleType.class))
+                    .enginePower(t.get(4, Integer.class))
+                    .numberOfWheels(t.get(5, Integer.class))
+                    .capacity(t.get(6, Integer.class))
+                    .distanceTravelled(t.get(7, Integer.class))
+                    .fuelConsumption(t.get(8, Float.class))
+                    .fuelType(t.get(9, FuelType.class))
+                    .coordinatesId(t.get(10, Long.class))
+                    .coordinatesX(t.get(11, Double.class))
+                    .coordinatesY(t.get(12, Float.class))
+                    .build());
+        }
+
+        Long total = keyset ? null : tuples.get(0).get(totalIdx, Long.class);
+        return new GridTablePage<>(rows, nextCursor(tuples, pageSize, keys, keysFrom), total);
+    }
+
+    // Сортировка sortModel (+ id как tie-breaker, чтобы порядок был однозначным),
+    // в keyset-режиме вместо OFFSET - условие "после последней строки предыдущей страницы"
+    private List<GridTableSortModel> applySortAndSeek(HibernateCriteriaBuilder cb, CriteriaQuery<?> cquery,
+                                                      Root<Vehicle> root, GridTableRequest req,
+                                                      List<Predicate> predicates, List<Path<?>> keyPaths) {
+        List<GridTableSortModel> keys = GridTableCursor.effectiveSort(req.sortModel, DEFAULT_SORT);
+        List<Order> orders = new ArrayList<>(keys.size());
+        for (GridTableSortModel k : keys) {
+            Path<?> p = GridTablePredicateBuilder.resolvePath(root, k.getColId());
+            keyPaths.add(p);
+            orders.add(GridTableCursor.isDesc(k) ? cb.desc(p) : cb.asc(p));
+        }
+        cquery.orderBy(orders);
+
+        if (req.isKeysetMode() && req.cursor != null && !req.cursor.isBlank()) {
+            Object[] after = GridTableCursor.decode(req.cursor, keys, keyPaths);
+            predicates.add(GridTableCursor.seekPredicate(cb, root.getModel(), keyPaths, keys, after));
+        }
+        return keys;
+    }
+
+    // курсор строим по ключам сортировки последней строки; если страница неполная - дальше строк нет
+    private static String nextCursor(List<Tuple> tuples, int pageSize, List<GridTableSortModel> keys, int keysFrom) {
+        if (tuples.size() < pageSize)
+            return null;
+        Tuple last = tuples.get(tuples.size() - 1);
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = last.get(keysFrom + i);
+        return GridTableCursor.encode(keys, values);
+    }
+
+    // Выгрузка по filterModel/sortModel грида без окна: только скаляры (колонки VehicleExportWriter.COLUMNS),
+    // сущности и DTO не создаются, драйвер читает курсором по fetchSize - память не зависит от размера выборки.
+    // Нужна транзакция (без неё PostgreSQL JDBC игнорирует fetchSize и читает всё сразу)
+    public Stream<Object[]> streamExportRows(GridTableRequest req) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Object[]> cquery = cb.createQuery(Object[].class);
+        Root<Vehicle> root = cquery.from(Vehicle.class);
+        Join<Vehicle, Coordinates> coords = root.join("coordinates", JoinType.LEFT);
+
+        List<Predicate> predicates = GridTablePredicateBuilder.filter(root, req).toPredicates(cb, root);
+        if (!predicates.isEmpty())
+            cquery.where(predicates.toArray(new Predicate[0]));
+
+        List<Order> orders = new ArrayList<>();
+        for (GridTableSortModel k : GridTableCursor.effectiveSort(req.sortModel, DEFAULT_SORT)) {
+            Path<?> p = GridTablePredicateBuilder.resolvePath(root, k.getColId());
+            orders.add(GridTableCursor.isDesc(k) ? cb.desc(p) : cb.asc(p));
+        }
+        cquery.orderBy(orders);
+
+        cquery.multiselect(
+                root.get("name"), root.get("type"), root.get("enginePower"), root.get("numberOfWheels"),
+                root.get("capacity"), root.get("distanceTravelled"), root.get("fuelConsumption"),
+                root.get("fuelType"), coords.get("x"), coords.get("y"));
+
+        return em.createQuery(cquery)
+                .setHint("org.hibernate.fetchSize", EXPORT_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream();
     }
 
     public long countByGrid(GridTableRequest req) {
@@ -124,13 +280,21 @@ public class VehicleDao {
         CriteriaQuery<Long> cnt = cb.createQuery(Long.class);
         Root<Vehicle> root = cnt.from(Vehicle.class);
 
-        List<Predicate> preds = GridTablePredicateBuilder.build(cb, root, req.filterModel);
+        List<Predicate> preds = GridTablePredicateBuilder.filter(root, req).toPredicates(cb, root);
         cnt.select(cb.count(root));
         if (!preds.isEmpty()) cnt.where(preds.toArray(new Predicate[0]));
 
         return em.createQuery(cnt).getSingleResult();
     }
 
+    // оценка планировщика PostgreSQL (без фильтров), обновляется ANALYZE/autovacuum
+    public long estimateCount() {
+        Number n = (Number) em.createNativeQuery(
+                        "select reltuples::bigint from pg_class where oid = 'vehicle'::regclass")
+                .getSingleResult();
+        return n == null ? -1 : n.longValue();
+    }
+
     @SuppressWarnings("unchecked")
     private EntityGraph<Vehicle> getWithCoordsGraph() {
         try {
@@ -142,6 +306,19 @@ public class VehicleDao {
         }
     }
 
+    // Все строки грида для VehicleColumnStore: колонки в порядке VehicleColumnStore.COLUMN_IDS,
+    // без сущностей в контексте; читается курсором порциями по fetchSize (нужна транзакция)
+    public Stream<Object[]> streamColumnarRows() {
+        return em.createQuery("""
+                        select v.id, v.name, v.creationTime, v.type, v.enginePower, v.numberOfWheels, v.capacity,
+                               v.distanceTravelled, v.fuelConsumption, v.fuelType, c.id, c.x, c.y
+                        from Vehicle v join v.coordinates c
+                        """, Object[].class)
+                .setHint("org.hibernate.fetchSize", 10_000)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream();
+    }
+
     public long countByCoordinatesId(Long coordinatesId) {
         return em.createQuery(
                         "select count(v) from Vehicle v where v.coordinates.id = :cid", Long.class)
@@ -160,22 +337,27 @@ public class VehicleDao {
     }
 
     public boolean existsByName(String name) {
-        if (name == null) return false;
-        Long cnt = em.createQuery(
-                        "select count(v) from Vehicle v where v.name = :name", Long.class)
-                .setParameter("name", name)
-                .getSingleResult();
-        return cnt != null && cnt > 0;
+        return findByName(name).isPresent();
+    }
+
+    // какие из переданных имён уже заняты (проверка пачки импорта вместо запроса на каждую запись)
+    public Set<String> findExistingNames(Collection<String> names) {
+        if (names == null || names.isEmpty()) return Set.of();
+        List<String> all = new ArrayList<>(names);
+        Set<String> out = new HashSet<>();
+        // режем на части: у PostgreSQL ограничение на число bind-параметров в запросе
+        for (int from = 0; from < all.size(); from += NAMES_PER_QUERY) {
+            List<String> part = all.subList(from, Math.min(all.size(), from + NAMES_PER_QUERY));
+            out.addAll(em.createQuery(
+                            "select v.name from Vehicle v where v.name in :names", String.class)
+                    .setParameter("names", part)
+                    .getResultList());
+        }
+        return out;
     }
 
     public boolean existsByNameAndIdNot(String name, Long id) {
-        if (name == null || id == null) return false;
-        Long cnt = em.createQuery(
-                        "select count(v) from Vehicle v where v.name = :name and v.id <> :id", Long.class)
-                .setParameter("name", name)
-                .setParameter("id", id)
-                .getSingleResult();
-        return cnt != null && cnt > 0;
+        return findByNameAndIdNot(name, id).isPresent();
     }
 
     public Vehicle findByNameWithPessimisticLock(String name) {
@@ -232,34 +414,20 @@ public class VehicleDao {
         }
     }
 
+    // Поиск по natural id: name -> id берётся из региона vehicle-name, сама сущность - из L2 entity-региона,
+    // запрос в БД только при промахе (в т.ч. всегда для свободного имени - отрицательный результат не кешируется)
     public Optional<Vehicle> findByName(String name) {
         if (name == null) return Optional.empty();
-        try {
-            Vehicle vehicle = em.createQuery(
-                            "select v from Vehicle v where v.name = :name", Vehicle.class)
-                    .setParameter("name", name)
-                    .setMaxResults(1)
-                    .getSingleResult();
-            return Optional.of(vehicle);
-        } catch (NoResultException e) {
-            return Optional.empty();
-        }
+        return em.unwrap(Session.class)
+                .bySimpleNaturalId(Vehicle.class)
+                .loadOptional(name);
     }
 
     public Optional<Vehicle> findByNameAndIdNot(String name, Long excludeId) {
         // excludeId - при update проверить уникальность имени, исключая эту запись (есть ли другое ТС с таким именем)
         if (name == null || excludeId == null) return Optional.empty();
-        try {
-            Vehicle vehicle = em.createQuery(
-                            "select v from Vehicle v where v.name = :name and v.id != :excludeId", Vehicle.class)
-                    .setParameter("name", name)
-                    .setParameter("excludeId", excludeId)
-                    .setMaxResults(1)
-                    .getSingleResult();
-            return Optional.of(vehicle);
-        } catch (NoResultException e) {
-            return Optional.empty();
-        }
+        // имя уникально, поэтому "другое ТС с таким именем" = ТС с этим именем, если это не сама запись
+        return findByName(name).filter(v -> !excludeId.equals(v.getId()));
     }
 
 }
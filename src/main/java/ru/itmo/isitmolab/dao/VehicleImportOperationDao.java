@@ -3,9 +3,12 @@ package ru.itmo.isitmolab.dao;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import ru.itmo.isitmolab.model.ImportJobState;
 import ru.itmo.isitmolab.model.VehicleImportOperation;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @ApplicationScoped
 public class VehicleImportOperationDao {
@@ -17,6 +20,11 @@ public class VehicleImportOperationDao {
         em.persist(op);
     }
 
+    public Optional<VehicleImportOperation> findById(Long id) {
+        if (id == null) return Optional.empty();
+        return Optional.ofNullable(em.find(VehicleImportOperation.class, id));
+    }
+
     // public List<VehicleImportOperation> findLastForAdmin(Long adminId, int limit) {
     //     return em.createQuery(
     //                     "SELECT o " +
@@ -41,4 +49,19 @@ public class VehicleImportOperationDao {
                 .getResultList();
     }
 
+    // незавершённые задачи (QUEUED/RUNNING) переводятся в FAILED одним UPDATE; возвращает число строк
+    public int failUnfinished(String errorMessage) {
+        return em.createQuery(
+                        "UPDATE VehicleImportOperation o " +
+                                "SET o.state = :failed, o.status = false, o.errorMessage = :msg, o.finishedAt = :now " +
+                                "WHERE o.state IN (:queued, :running)"
+                )
+                .setParameter("failed", ImportJobState.FAILED)
+                .setParameter("msg", errorMessage)
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("queued", ImportJobState.QUEUED)
+                .setParameter("running", ImportJobState.RUNNING)
+                .executeUpdate();
+    }
+
 }
@@ -5,9 +5,12 @@ import jakarta.persistence.EntityGraph;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
 
 import java.util.*;
+import java.util.stream.Stream;
 
+@Instrumented
 @ApplicationScoped
 public class VehicleSpecialDao {
 
@@ -56,6 +59,19 @@ public class VehicleSpecialDao {
         return ordered;
     }
 
+    // Снимок для VehicleAggregates: читается курсором (нужна транзакция), порядок - под индекс расстояний
+    @SuppressWarnings("unchecked")
+    public Stream<Object[]> streamAggregateRows() {
+        return em.createNativeQuery("""
+                        select id, fuel_consumption, distance_travelled
+                        from vehicle
+                        order by distance_travelled nulls last, id
+                        """)
+                .setHint("org.hibernate.fetchSize", 10_000)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream();
+    }
+
     /* нативные вызовы функций */
 
     public long countFuelConsumptionGreaterThan(float v) {
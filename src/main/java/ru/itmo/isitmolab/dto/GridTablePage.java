@@ -0,0 +1,19 @@
+package ru.itmo.isitmolab.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Страница, которую DAO отдаёт сервису: строки + курсор на следующую страницу (keyset-режим)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GridTablePage<T> {
+    public List<T> rows;
+    public String nextCursor; // null - если страниц дальше нет
+    public Long total; // точный итог, если он получен тем же запросом (count(*) over()), иначе null
+}
@@ -1,10 +1,14 @@
 package ru.itmo.isitmolab.dto;
 
+import jakarta.json.bind.annotation.JsonbTransient;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import ru.itmo.isitmolab.util.filter.GridFilter;
 
 import java.util.List;
 import java.util.Map;
@@ -22,6 +26,19 @@ public class GridTableRequest {
     // Ключ -- colId ("name", "type", "admin.id", "coordinates.x")
     // Значение -- объект с полями, зависящими от типа фильтра (text, number, date, set)
     public Map<String, Object> filterModel; // идентификатор_колонки -> описание_фильтра
+    // keyset-пагинация: true - страница ищется по курсору, а не через OFFSET (startRow тогда не используется)
+    public Boolean keyset;
+    // непрозрачный курсор из GridTableResponse.nextCursor предыдущей страницы (null - первая страница)
+    public String cursor;
+    // filterModel, разобранный GridTablePredicateBuilder.filter(): страница и count(*) разбирают его один раз
+    @JsonbTransient
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient GridFilter compiledFilter;
+
+    public boolean isKeysetMode() {
+        return Boolean.TRUE.equals(keyset) || (cursor != null && !cursor.isBlank());
+    }
 }
 
 /*
@@ -54,7 +71,9 @@ public class GridTableRequest {
             "filterType": "set",
             "values": ["KEROSENE","NUCLEAR"]
         }
-    }
+    },
+    "keyset": true,
+    "cursor": "WyIyMDI1LTEwLTIwVDA4OjEyOjQ1IiwiNDIiXQ"
 }
 */
 
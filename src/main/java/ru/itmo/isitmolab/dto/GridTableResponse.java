@@ -14,4 +14,6 @@ import java.util.List;
 public class GridTableResponse<T> {
     public List<T> rows;
     public Integer lastRow;
+    public String nextCursor; // курсор следующей страницы в keyset-режиме
+    public Boolean totalExact; // false - lastRow является оценкой планировщика, а не точным count(*)
 }
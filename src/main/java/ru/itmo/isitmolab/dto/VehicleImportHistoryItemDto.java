@@ -17,6 +17,8 @@ public class VehicleImportHistoryItemDto {
     private boolean success;
     private String username;
     private Integer importedCount;
+    private boolean inProgress;
+    private Integer processedCount;
     private LocalDateTime creationTime;
 
     public static VehicleImportHistoryItemDto toDto(VehicleImportOperation op) {
@@ -27,6 +29,8 @@ public class VehicleImportHistoryItemDto {
                 .id(op.getId())
                 .success(success)
                 .importedCount(success ? op.getImportedCount() : null)
+                .inProgress(op.getStatus() == null)
+                .processedCount(op.getProcessedCount())
                 .creationTime(op.getCreationTime())
                 .build();
     }
@@ -0,0 +1,52 @@
+package ru.itmo.isitmolab.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.itmo.isitmolab.model.ImportJobState;
+import ru.itmo.isitmolab.model.VehicleImportOperation;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VehicleImportJobDto {
+    private Long id;
+    private ImportJobState state;
+    private String mode;
+    private Integer processedCount;
+    private Integer importedCount;
+    private double rowsPerSecond;
+    private LocalDateTime creationTime;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String errorMessage;
+
+    public static VehicleImportJobDto toDto(VehicleImportOperation op) {
+        return VehicleImportJobDto.builder()
+                .id(op.getId())
+                .state(op.getState())
+                .mode(op.getMode())
+                .processedCount(op.getProcessedCount())
+                .importedCount(op.getState() == ImportJobState.SUCCEEDED ? op.getImportedCount() : null)
+                .rowsPerSecond(rowsPerSecond(op))
+                .creationTime(op.getCreationTime())
+                .startedAt(op.getStartedAt())
+                .finishedAt(op.getFinishedAt())
+                .errorMessage(op.getErrorMessage())
+                .build();
+    }
+
+    // средняя скорость с момента старта (для завершённой задачи - за всё время работы)
+    private static double rowsPerSecond(VehicleImportOperation op) {
+        if (op.getStartedAt() == null || op.getProcessedCount() == null) return 0;
+        LocalDateTime end = op.getFinishedAt() != null ? op.getFinishedAt() : LocalDateTime.now();
+        long millis = Duration.between(op.getStartedAt(), end).toMillis();
+        if (millis <= 0) return 0;
+        return Math.round(op.getProcessedCount() * 10_000.0 / millis) / 10.0;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.itmo.isitmolab.exception;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// Запрос к ресурсу выполнил больше SQL, чем разрешено @SqlBudget (режим -Dsql.budget.mode=fail)
+@Getter
+public class SqlBudgetExceededException extends RuntimeException {
+
+    private final String resource;
+    private final int budget;
+    private final int count;
+    private final List<String> fingerprints;
+
+    public SqlBudgetExceededException(String resource, int budget, int count, List<String> fingerprints) {
+        super("SQL budget exceeded for " + resource + ": " + count + " > " + budget);
+        this.resource = resource;
+        this.budget = budget;
+        this.count = count;
+        this.fingerprints = fingerprints;
+    }
+}
@@ -6,12 +6,11 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
+import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.util.sql.SqlErrors;
 
-import java.sql.SQLException;
-import java.util.ArrayDeque;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 
 @Provider
 public class RollbackExceptionMapper implements ExceptionMapper<RollbackException> {
@@ -32,8 +31,20 @@ public class RollbackExceptionMapper implements ExceptionMapper<RollbackExceptio
                     .build();
         }
 
+        // параллельная вставка/переименование с тем же именем прошла проверку в сервисе раньше нас
+        if (SqlErrors.isUniqueViolation(ex, Vehicle.NAME_CONSTRAINT)) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("error", "VEHICLE_NAME_NOT_UNIQUE");
+            body.put("message", "Транспортное средство с таким именем уже существует");
+
+            return Response.status(Response.Status.CONFLICT)
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .entity(body)
+                    .build();
+        }
+
         // SERIALIZABLE-конфликт: SQLException с SQLState=40001
-        if (hasSqlState(ex, "40001")) {
+        if (SqlErrors.hasSqlState(ex, "40001")) {
             Map<String, Object> body = new LinkedHashMap<>();
             body.put("error", "SERIALIZATION_CONFLICT");
             body.put("message", "Конкурентный доступ, повторите запрос");
@@ -65,26 +76,4 @@ public class RollbackExceptionMapper implements ExceptionMapper<RollbackExceptio
         }
         return null;
     }
-
-    private boolean hasSqlState(Throwable ex, String sqlState) {
-        if (ex == null || sqlState == null) return false;
-
-        ArrayDeque<Throwable> stack = new ArrayDeque<>();
-        stack.add(ex);
-
-        while (!stack.isEmpty()) {
-            Throwable cur = stack.pop();
-            if (cur instanceof SQLException sql && sqlState.equals(sql.getSQLState())) {
-                return true;
-            }
-            for (Throwable suppressed : cur.getSuppressed()) {
-                stack.add(suppressed);
-            }
-            Throwable cause = cur.getCause();
-            if (cause != null && cause != cur) {
-                stack.add(cause);
-            }
-        }
-        return false;
-    }
 }
@@ -0,0 +1,29 @@
+package ru.itmo.isitmolab.exception.mapper;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import ru.itmo.isitmolab.exception.SqlBudgetExceededException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Provider
+public class SqlBudgetExceededExceptionMapper implements ExceptionMapper<SqlBudgetExceededException> {
+
+    @Override
+    public Response toResponse(SqlBudgetExceededException ex) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "SQL_BUDGET_EXCEEDED");
+        body.put("message", ex.getMessage());
+        body.put("resource", ex.getResource());
+        body.put("budget", ex.getBudget());
+        body.put("statements", ex.getFingerprints());
+
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(body)
+                .build();
+    }
+}
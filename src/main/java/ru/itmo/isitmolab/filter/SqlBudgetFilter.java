@@ -0,0 +1,106 @@
+package ru.itmo.isitmolab.filter;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import ru.itmo.isitmolab.util.metrics.MetricsRegistry;
+import ru.itmo.isitmolab.util.sql.SqlBudget;
+import ru.itmo.isitmolab.util.sql.SqlRequestStats;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+// Бюджет SQL на HTTP-запрос: считает запросы, которые Hibernate выполнил за время обработки
+// (SqlStatementCounter -> SqlRequestStats), сверяет с @SqlBudget метода ресурса
+// и ищет повторяющиеся отпечатки (N+1). Отвязка от потока при любом исходе - SqlRequestStatsCleanupFilter
+@Provider
+@Priority(Priorities.USER)
+public class SqlBudgetFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger log = Logger.getLogger(SqlBudgetFilter.class.getName());
+
+    public static final String REQUEST_SQL = "request_sql_statements";
+
+    // JAVA_OPTS="-Dsql.budget.mode=log|fail|off -Dsql.budget.default=-1 -Dsql.nplus1.threshold=5 -Dsql.budget.headers=true"
+    private static final Mode MODE = Mode.parse(System.getProperty("sql.budget.mode", "log"));
+    private static final int DEFAULT_BUDGET = Integer.getInteger("sql.budget.default", -1); // -1 - без ограничения
+    private static final int NPLUS1_THRESHOLD = Integer.getInteger("sql.nplus1.threshold", 5);
+    // заголовки X-SQL-* - для разработки, в проде не светим
+    private static final boolean HEADERS = Boolean.getBoolean("sql.budget.headers");
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Inject
+    MetricsRegistry metrics;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        Method m = resourceInfo.getResourceMethod();
+        if (MODE == Mode.OFF || m == null) {
+            SqlRequestStats.end(); // на случай, если поток пришёл со счётчиком прошлого запроса
+            return;
+        }
+
+        String resource = m.getDeclaringClass().getSimpleName() + "." + m.getName();
+        SqlRequestStats.begin(resource, budget(m, resource), MODE == Mode.FAIL);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        SqlRequestStats stats = SqlRequestStats.current();
+        if (stats == null) return;
+        SqlRequestStats.end();
+
+        metrics.histogram(REQUEST_SQL, "SQL statements per HTTP request", "resource", stats.getResource())
+                .record(stats.getCount());
+
+        if (stats.isExceeded()) {
+            // в режиме fail запрос уже упал в SqlRequestStats, здесь только лог
+            log.warning("SQL budget exceeded: " + stats.getResource() + " " + stats.getCount()
+                    + " > " + stats.getBudget() + "; " + String.join(" | ", stats.top(5)));
+        }
+        List<String> repeated = stats.repeated(NPLUS1_THRESHOLD);
+        if (!repeated.isEmpty()) {
+            log.warning("Possible N+1 in " + stats.getResource() + ": " + String.join(" | ", repeated));
+        }
+
+        if (HEADERS) {
+            responseContext.getHeaders().putSingle("X-SQL-Count", stats.getCount());
+            if (stats.getBudget() >= 0) {
+                responseContext.getHeaders().putSingle("X-SQL-Budget", stats.getBudget());
+            }
+        }
+    }
+
+    // -Dsql.budget.<Класс>.<метод> > @SqlBudget метода > @SqlBudget класса > -Dsql.budget.default
+    private static int budget(Method m, String resource) {
+        Integer override = Integer.getInteger("sql.budget." + resource);
+        if (override != null) return override;
+        SqlBudget a = m.getAnnotation(SqlBudget.class);
+        if (a == null) a = m.getDeclaringClass().getAnnotation(SqlBudget.class);
+        return a != null ? a.value() : DEFAULT_BUDGET;
+    }
+
+    private enum Mode {
+        OFF, LOG, FAIL;
+
+        static Mode parse(String s) {
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                log.warning("Unknown sql.budget.mode '" + s + "', using LOG");
+                return LOG;
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.itmo.isitmolab.filter;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.annotation.WebFilter;
+import ru.itmo.isitmolab.util.sql.SqlRequestStats;
+
+import java.io.IOException;
+
+// Гарантированная отвязка SqlRequestStats от рабочего потока. Response-фильтр JAX-RS не вызывается,
+// если исключение не замаплено или RESTEasy оборвал запрос до метода ресурса, - без этого счётчик
+// остался бы на потоке пула и в режиме fail считал (и ронял) чужой следующий запрос
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class SqlRequestStatsCleanupFilter implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        SqlRequestStats.end();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SqlRequestStats.end();
+        }
+    }
+}
@@ -16,13 +16,14 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @Cacheable
-@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "coordinates")
 @Entity
 @Table(name = "coordinates")
 public class Coordinates {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coordinates_id_gen")
+    @SequenceGenerator(name = "coordinates_id_gen", sequenceName = "coordinates_id_seq", allocationSize = 50)
     private Long id;
 
     @NotNull
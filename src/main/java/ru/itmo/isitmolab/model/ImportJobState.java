@@ -0,0 +1,8 @@
+package ru.itmo.isitmolab.model;
+
+public enum ImportJobState {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED
+}
@@ -7,6 +7,8 @@ import jakarta.validation.constraints.Positive;
 import lombok.*;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.time.LocalDateTime;
 
@@ -22,19 +24,29 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Cacheable
-@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "vehicle")
+@NaturalIdCache(region = "vehicle-name") // name -> id в L2, проверки уникальности имени без запроса
 @Entity
-@Table(name = "vehicle")
+@Table(name = "vehicle", uniqueConstraints = @UniqueConstraint(name = Vehicle.NAME_CONSTRAINT, columnNames = "name"))
 public class Vehicle {
 
+    // UNIQUE (name) в sql/init.sql: natural id опирается на него, нарушение мапится в 409 / ошибку строки импорта
+    public static final String NAME_CONSTRAINT = "vehicle_name_uniq";
+
+    // последовательность BIGSERIAL-колонки с pooled-оптимизатором: id известен до INSERT,
+    // поэтому Hibernate может батчить вставки (с IDENTITY JDBC batching отключается)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vehicle_id_gen")
+    @SequenceGenerator(name = "vehicle_id_gen", sequenceName = "vehicle_id_seq", allocationSize = 50)
     private Long id;
 
     @Version
     @Column(name = "version", nullable = false)
     private Integer version;
 
+    // уникальность имени гарантирует vehicle_name_uniq в БД; mutable - имя можно менять при update,
+    // Hibernate сам обновит/удалит запись name -> id в кеше при переименовании и удалении
+    @NaturalId(mutable = true)
     @NotBlank
     @Column(nullable = false)
     private String name;
@@ -21,11 +21,31 @@ public class VehicleImportOperation {
     private Long id;
 
     @Column(name = "status")
-    private Boolean status;
+    private Boolean status; // null - импорт ещё идёт (потоковый режим)
 
     @Column(name = "imported_count")
     private Integer importedCount;
 
+    @Column(name = "processed_count")
+    private Integer processedCount; // прогресс потокового импорта: сколько записей уже прочитано и обработано
+
+    // состояние задачи импорта (асинхронный режим), status остаётся итогом для истории
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state")
+    private ImportJobState state;
+
+    @Column(name = "mode")
+    private String mode; // json | stream | copy
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "error_message")
+    private String errorMessage;
+
     @Column(name = "creation_time", nullable = false, updatable = false)
     private LocalDateTime creationTime;
 
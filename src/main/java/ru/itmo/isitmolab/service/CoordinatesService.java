@@ -2,6 +2,8 @@ package ru.itmo.isitmolab.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
@@ -11,11 +13,21 @@ import ru.itmo.isitmolab.dto.CoordinatesDto;
 import ru.itmo.isitmolab.dto.GridTableRequest;
 import ru.itmo.isitmolab.dto.GridTableResponse;
 import ru.itmo.isitmolab.model.Coordinates;
+import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
+import ru.itmo.isitmolab.util.cache.GridPageCache;
+import ru.itmo.isitmolab.util.columnar.VehicleColumnStore;
+import ru.itmo.isitmolab.util.count.GridCount;
+import ru.itmo.isitmolab.util.count.GridCountService;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.index.GridIndexAdvisor;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
+import ru.itmo.isitmolab.ws.VehicleWsService;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+@Instrumented
 @ApplicationScoped
 public class CoordinatesService {
 
@@ -25,9 +37,35 @@ public class CoordinatesService {
     @Inject
     VehicleDao vehicleDao;
 
+    @Inject
+    GridCountService countService;
+
+    @Inject
+    GridPageCache pageCache;
+
+    @Inject
+    VehicleWsService wsHub;
+
+    @Inject
+    GridIndexAdvisor indexAdvisor;
+
+    @Inject
+    VehicleColumnStore columnStore;
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
     public GridTableResponse<CoordinatesDto> query(GridTableRequest req) {
+        indexAdvisor.record("coordinates", req, CoordinatesDao.DEFAULT_SORT);
+        GridFilter filter = GridTablePredicateBuilder.filter(emf.getMetamodel().entity(Coordinates.class), req);
+        return pageCache.get(GridPageCache.COORDINATES, req, filter, GridPageCache.GRID_TABLES,
+                () -> load(req, filter));
+    }
+
+    private GridTableResponse<CoordinatesDto> load(GridTableRequest req, GridFilter filter) {
         List<Coordinates> rows = coordinatesDao.findPageByGrid(req);
-        long total = coordinatesDao.countByGrid(req);
+        GridCount total = countService.count("coordinates", filter,
+                () -> coordinatesDao.countByGrid(req), coordinatesDao::estimateCount);
 
         Map<Long, Integer> counts = coordinatesDao.countVehiclesForCoordinatesIds(
                 rows.stream().map(Coordinates::getId).toList()
@@ -36,7 +74,7 @@ public class CoordinatesService {
         List<CoordinatesDto> dtos = rows.stream()
                 .map(c -> CoordinatesDto.toDto(c, counts.getOrDefault(c.getId(), 0)))
                 .toList();
-        return new GridTableResponse<>(dtos, (int) total);
+        return new GridTableResponse<>(dtos, (int) total.getTotal(), null, total.isExact());
     }
 
     public CoordinatesDto getOne(Long id) {
@@ -52,6 +90,8 @@ public class CoordinatesService {
             throw new WebApplicationException("x и y обязательны", Response.Status.BAD_REQUEST);
         }
         Coordinates c = coordinatesDao.findOrCreateByXY(dto.getX(), dto.getY());
+        countService.invalidate();
+        pageCache.invalidate(GridPageCache.COORDINATES);
         return c.getId();
     }
 
@@ -64,6 +104,10 @@ public class CoordinatesService {
         if (dto.getY() != null) c.setY(dto.getY());
 
         coordinatesDao.save(c);
+        countService.invalidate(); // фильтры грида ТС по coordinates.x/y тоже зависят от координат
+        pageCache.invalidate(GridPageCache.COORDINATES);
+        columnStore.coordinatesUpdated(id, c.getX(), c.getY());
+        wsHub.requestRefresh(); // меняются строки всех ТС с этими координатами
     }
 
     public List<CoordinatesDto> searchShort(String q, int limit) {
@@ -100,6 +144,10 @@ public class CoordinatesService {
         }
 
         coordinatesDao.deleteById(coordinatesId);
+        countService.invalidate();
+        pageCache.invalidate(GridPageCache.GRID_TABLES); // ТС могли быть переназначены
+        if (refCount > 0) columnStore.invalidate(); // переназначение - bulk UPDATE мимо сущностей
+        if (refCount > 0) wsHub.requestRefresh(); // ТС переназначены на другие координаты
     }
 
 }
@@ -0,0 +1,123 @@
+package ru.itmo.isitmolab.service;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import ru.itmo.isitmolab.model.VehicleImportOperation;
+import ru.itmo.isitmolab.util.VehicleExportFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Асинхронный импорт: запрос только сохраняет файл и ставит задачу, сам импорт идёт на managed executor-е.
+// Состояние задачи хранится в vehicle_import_operation и опрашивается через GET /vehicle/import/{jobId}
+@ApplicationScoped
+public class VehicleImportJobService {
+
+    private static final Logger log = Logger.getLogger(VehicleImportJobService.class.getName());
+
+    @Resource
+    ManagedExecutorService executor;
+
+    @Inject
+    VehicleImportService importService;
+
+    // Задачи прошлого запуска сервера: их файлы и потоки executor-а потеряны, без этого они висели бы QUEUED/RUNNING вечно
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        try {
+            int n = importService.failOrphanedOperations();
+            if (n > 0) log.warning("Marked " + n + " unfinished import job(s) from the previous run as FAILED");
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Cannot fail orphaned import jobs", e);
+        }
+    }
+
+    // mode: stream (по умолчанию) | copy. Режим json в фоне не поддерживается - он читает файл в память целиком
+    // и пишет одной транзакцией, т.е. ровно то, от чего уводит асинхронный импорт; такой запрос - 400
+    public VehicleImportOperation submit(InputStream in, String mode, Integer chunkSize, VehicleExportFormat format) {
+        if (in == null) {
+            throw new BadRequestException("Не передан файл для импорта");
+        }
+        String jobMode;
+        if (mode == null || VehicleImportService.MODE_STREAM.equals(mode)) {
+            jobMode = VehicleImportService.MODE_STREAM;
+        } else if (VehicleImportService.MODE_COPY.equals(mode)) {
+            jobMode = VehicleImportService.MODE_COPY;
+        } else {
+            throw new BadRequestException("Для async=true mode должен быть stream или copy");
+        }
+
+        // тело запроса нельзя читать после ответа 202 - сначала сохраняем во временный файл
+        Path file = spool(in, format);
+        VehicleImportOperation op = null;
+        try {
+            op = importService.createQueuedOperation(jobMode);
+            Long opId = op.getId();
+            executor.submit(() -> run(opId, jobMode, chunkSize, format, file));
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            // задача не попала в executor (RejectedExecutionException и т.п.) - иначе осталась бы QUEUED навсегда
+            if (op != null) failQuietly(op.getId(), e);
+            throw e;
+        }
+        return op;
+    }
+
+    private void run(Long opId, String mode, Integer chunkSize, VehicleExportFormat format, Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            importService.markRunning(opId);
+            if (VehicleImportService.MODE_COPY.equals(mode)) {
+                importService.runCopy(opId, in, format);
+            } else {
+                importService.runStreaming(opId, in, chunkSize, format);
+            }
+        } catch (RuntimeException e) {
+            // состояние FAILED и причина уже записаны в операцию
+            log.log(Level.FINE, "Import job " + opId + " failed", e);
+        } catch (IOException e) {
+            importService.finishImportOperation(opId, false, 0, "Не удалось прочитать файл");
+            log.log(Level.WARNING, "Import job " + opId + ": cannot read spooled file", e);
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    private void failQuietly(Long opId, RuntimeException cause) {
+        try {
+            importService.finishImportOperation(opId, false, 0, "Не удалось поставить задачу в очередь");
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static Path spool(InputStream in, VehicleExportFormat format) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("vehicle-import-", "." + format.getExtension());
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Cannot store import file", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot delete temp import file " + file, e);
+        }
+    }
+}
@@ -2,26 +2,52 @@ package ru.itmo.isitmolab.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.PersistenceException;
 import jakarta.transaction.Transactional;
 import jakarta.validation.ConstraintViolation;
+import jakarta.ws.rs.BadRequestException;
+import ru.itmo.isitmolab.dao.CoordinatesDao;
+import ru.itmo.isitmolab.dao.VehicleCopyImportDao;
 import ru.itmo.isitmolab.dao.VehicleDao;
 import ru.itmo.isitmolab.dao.VehicleImportOperationDao;
 import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.dto.VehicleImportErrors;
 import ru.itmo.isitmolab.dto.VehicleImportHistoryItemDto;
 import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+import ru.itmo.isitmolab.dto.VehicleImportJobDto;
+import ru.itmo.isitmolab.exception.VehicleNameNotUniqueException;
 import ru.itmo.isitmolab.exception.VehicleValidationException;
 import ru.itmo.isitmolab.model.Coordinates;
+import ru.itmo.isitmolab.model.ImportJobState;
 import ru.itmo.isitmolab.model.Vehicle;
 import ru.itmo.isitmolab.model.VehicleImportOperation;
 import ru.itmo.isitmolab.util.BeanValidation;
+import ru.itmo.isitmolab.util.VehicleExportFormat;
+import ru.itmo.isitmolab.util.VehicleImportReader;
+import ru.itmo.isitmolab.util.aggregate.VehicleAggregates;
+import ru.itmo.isitmolab.util.cache.GridPageCache;
+import ru.itmo.isitmolab.util.columnar.VehicleColumnStore;
+import ru.itmo.isitmolab.util.count.GridCountService;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
+import ru.itmo.isitmolab.util.sql.SqlErrors;
 import ru.itmo.isitmolab.ws.VehicleWsService;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+@Instrumented
 @ApplicationScoped
 public class VehicleImportService {
 
@@ -30,11 +56,33 @@ public class VehicleImportService {
     @Inject
     private VehicleImportService self;
     @Inject
-    private VehicleService vehicleService;
-    @Inject
     private VehicleDao dao;
     @Inject
+    private CoordinatesDao coordinatesDao;
+    @Inject
+    private VehicleCopyImportDao copyDao;
+    @Inject
     private VehicleWsService wsHub;
+    @Inject
+    private GridCountService countService;
+    @Inject
+    private GridPageCache pageCache;
+    @Inject
+    private VehicleAggregates aggregates;
+    @Inject
+    private VehicleColumnStore columnStore;
+
+    // JAVA_OPTS="-Dimport.chunk.size=1000"
+    private static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("import.chunk.size", 1000);
+    private static final int MAX_CHUNK_SIZE = 50_000;
+    // flush/clear каждые N записей, кратно hibernate.jdbc.batch_size
+    private static final int FLUSH_EVERY = Integer.getInteger("import.flush.size", 50);
+    // сколько ошибок максимум возвращается клиенту (COPY-импорт рассчитан на миллионы строк)
+    private static final int MAX_REPORTED_ERRORS = 1_000;
+
+    public static final String MODE_JSON = "json";
+    public static final String MODE_STREAM = "stream";
+    public static final String MODE_COPY = "copy";
 
 
     @Transactional
@@ -43,41 +91,33 @@ public class VehicleImportService {
         int importedCount = 0;
 
         try {
-            // VALIDATION
-            List<VehicleImportErrors.RowError> validationErrors = new ArrayList<>();
-            for (int i = 0; i < items.size(); i++) {
-                VehicleImportItemDto item = items.get(i);
-                Set<ConstraintViolation<VehicleImportItemDto>> violations = BeanValidation.validate(item);
-
-                for (ConstraintViolation<VehicleImportItemDto> violation : violations) {
-                    validationErrors.add(new VehicleImportErrors.RowError(
-                            i + 1,
-                            violation.getPropertyPath().toString(),
-                            violation.getMessage()
-                    ));
-                }
-            }
-
+            // VALIDATION (+ БИЗНЕС-ОГРАНИЧЕНИЕ: уникальность имени - одним запросом на весь файл)
+            List<VehicleImportErrors.RowError> validationErrors = rowErrors(items, 1, new HashMap<>());
             if (!validationErrors.isEmpty()) {
                 throw new VehicleValidationException("Validation failed", validationErrors);
             }
 
             // IMPORT
-            for (VehicleImportItemDto item : items) {
-                VehicleDto dto = VehicleImportItemDto.toEntity(item);
-
-                // БИЗНЕС-ОГРАНИЧЕНИЕ: уникальность имени
-                vehicleService.checkUniqueVehicleName(dto.getName(), null);
-
-                Coordinates coords = vehicleService.resolveCoordinatesForDto(dto);
-                Vehicle v = VehicleDto.toEntity(dto, null);
-                v.setCoordinates(coords);
-                dao.save(v);
-
-                importedCount++;
+            Map<CoordinatesDao.XY, Coordinates> coords = resolveCoordinates(items);
+            try {
+                for (VehicleImportItemDto item : items) {
+                    persistItem(item, coords);
+                    importedCount++;
+                    if (importedCount % FLUSH_EVERY == 0) {
+                        // отправляем JDBC-батч и отпускаем сущности, иначе контекст растёт на весь файл
+                        dao.flush();
+                        dao.clear();
+                    }
+                }
+                dao.flush(); // последний батч - здесь, а не при коммите, чтобы нарушение UNIQUE стало ошибкой строки
+            } catch (PersistenceException e) {
+                throw nameConflict(e, items, 1);
             }
 
-            wsHub.broadcastText("refresh");
+            countService.invalidate();
+
+            pageCache.invalidate(GridPageCache.GRID_TABLES);
+            wsHub.requestRefresh();
 
             self.logImportOperation(true, importedCount);
 
@@ -87,15 +127,354 @@ public class VehicleImportService {
         }
     }
 
+    // Потоковый импорт: файл читается пачками по chunkSize записей, каждая пачка - отдельная транзакция.
+    // Память ограничена размером пачки, прогресс виден в истории (processedCount) ещё до окончания.
+    // При ошибке уже закоммиченные пачки остаются в БД, операция помечается неуспешной с их количеством
+    public VehicleImportOperation importVehiclesStreaming(InputStream in, Integer chunkSize, VehicleExportFormat format) {
+        VehicleImportOperation op = self.startImportOperation(MODE_STREAM);
+        return runStreaming(op.getId(), in, chunkSize, format);
+    }
+
+    // opId - уже созданная операция (синхронный вызов или задача из VehicleImportJobService)
+    public VehicleImportOperation runStreaming(Long opId, InputStream in, Integer chunkSize, VehicleExportFormat format) {
+        int size = chunkSize != null && chunkSize > 0 ? Math.min(chunkSize, MAX_CHUNK_SIZE) : DEFAULT_CHUNK_SIZE;
+
+        int importedCount = 0;
+
+        // имена всех уже прочитанных записей файла -> номер строки (дубликаты внутри файла между пачками)
+        Map<String, Integer> namesInFile = new HashMap<>();
+
+        try (VehicleImportReader reader = VehicleImportReader.open(in, format)) {
+            List<VehicleImportItemDto> chunk;
+            while (!(chunk = reader.nextChunk(size)).isEmpty()) {
+                int firstRow = reader.getRowNumber() - chunk.size() + 1;
+
+                List<VehicleImportErrors.RowError> validationErrors = rowErrors(chunk, firstRow, namesInFile);
+                if (!validationErrors.isEmpty()) {
+                    throw new VehicleValidationException("Validation failed", validationErrors);
+                }
+
+                self.importChunk(chunk, firstRow);
+                importedCount += chunk.size();
+                self.updateImportProgress(opId, importedCount);
+            }
+
+            if (importedCount == 0) {
+                throw new BadRequestException("Файл не содержит данных для импорта");
+            }
+
+            return self.finishImportOperation(opId, true, importedCount, null);
+
+        } catch (RuntimeException e) {
+            self.finishImportOperation(opId, false, importedCount, describe(e));
+            throw e;
+        } finally {
+            if (importedCount > 0) {
+                countService.invalidate();
+                pageCache.invalidate(GridPageCache.GRID_TABLES);
+                wsHub.requestRefresh();
+            }
+        }
+    }
+
+    // COPY-импорт для очень больших файлов: валидные строки потоком идут COPY-ом во временную таблицу,
+    // уникальность имён проверяется и данные переносятся в coordinates/vehicle set-based SQL в одной транзакции.
+    // Как и обычный импорт - всё или ничего: при любой ошибке ничего не вставляется
+    public VehicleImportOperation importVehiclesCopy(InputStream in, VehicleExportFormat format) {
+        VehicleImportOperation op = self.startImportOperation(MODE_COPY);
+        return runCopy(op.getId(), in, format);
+    }
+
+    public VehicleImportOperation runCopy(Long opId, InputStream in, VehicleExportFormat format) {
+        int importedCount = 0;
+        try {
+            importedCount = self.copyImport(in, opId, format);
+            return self.finishImportOperation(opId, true, importedCount, null);
+        } catch (RuntimeException e) {
+            self.finishImportOperation(opId, false, 0, describe(e));
+            throw e;
+        } finally {
+            if (importedCount > 0) {
+                countService.invalidate();
+                pageCache.invalidate(GridPageCache.GRID_TABLES);
+                aggregates.invalidate(); // строки пришли COPY-ом мимо сущностей
+                columnStore.invalidate();
+                wsHub.requestRefresh();
+            }
+        }
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public int copyImport(InputStream in, Long operationId, VehicleExportFormat format) {
+        return copyDao.inStage(stage -> {
+            List<VehicleImportErrors.RowError> errors = new ArrayList<>();
+
+            try (VehicleImportReader reader = VehicleImportReader.open(in, format)) {
+                List<VehicleImportItemDto> chunk;
+                while (!(chunk = reader.nextChunk(DEFAULT_CHUNK_SIZE)).isEmpty()) {
+                    int firstRow = reader.getRowNumber() - chunk.size() + 1;
+
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.addAll(validate(chunk, firstRow));
+                    }
+                    // после первой ошибки дальше только валидируем - вставки всё равно не будет
+                    if (errors.isEmpty()) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stage.write(firstRow + i, chunk.get(i));
+                        }
+                    }
+                    self.updateImportProgress(operationId, reader.getRowNumber());
+                }
+            }
+
+            long loaded = stage.endCopy();
+            if (loaded == 0 && errors.isEmpty()) {
+                throw new BadRequestException("Файл не содержит данных для импорта");
+            }
+
+            // БИЗНЕС-ОГРАНИЧЕНИЕ: уникальность имени - в SQL по staging-таблице
+            if (errors.isEmpty()) {
+                stage.lockVehicleTable();
+                for (Object[] c : stage.findNameConflicts(MAX_REPORTED_ERRORS)) {
+                    String name = (String) c[1];
+                    String message = c[2] != null
+                            ? "Имя '" + name + "' уже встречается в файле в записи " + c[2]
+                            : new VehicleNameNotUniqueException(name).getMessage();
+                    errors.add(new VehicleImportErrors.RowError((Integer) c[0], "name", message));
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                throw new VehicleValidationException("Validation failed",
+                        errors.size() > MAX_REPORTED_ERRORS ? errors.subList(0, MAX_REPORTED_ERRORS) : errors);
+            }
+            return stage.merge();
+        });
+    }
+
+    // firstRow - номер первой записи пачки в файле (для ошибки строки при нарушении UNIQUE)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void importChunk(List<VehicleImportItemDto> chunk, int firstRow) {
+        Map<CoordinatesDao.XY, Coordinates> coords = resolveCoordinates(chunk);
+        try {
+            for (int i = 0; i < chunk.size(); i++) {
+                persistItem(chunk.get(i), coords);
+                if ((i + 1) % FLUSH_EVERY == 0) {
+                    dao.flush();
+                    dao.clear();
+                }
+            }
+            dao.flush();
+        } catch (PersistenceException e) {
+            throw nameConflict(e, chunk, firstRow);
+        }
+        dao.clear(); // сущности пачки больше не нужны - не держим их в контексте
+    }
+
+    // checkUniqueNames смотрит на БД без блокировки: параллельный импорт/create может вставить то же имя
+    // между проверкой и INSERT. Тогда срабатывает vehicle_name_uniq - превращаем его в ошибку строки файла
+    private RuntimeException nameConflict(PersistenceException e, List<VehicleImportItemDto> items, int firstRow) {
+        if (!SqlErrors.isUniqueViolation(e, Vehicle.NAME_CONSTRAINT)) return e;
+        String name = SqlErrors.uniqueViolationValue(e, Vehicle.NAME_CONSTRAINT, "name");
+        Integer row = null;
+        for (int i = 0; name != null && i < items.size(); i++) {
+            if (name.equals(items.get(i).getName())) {
+                row = firstRow + i;
+                break;
+            }
+        }
+        String message = name != null
+                ? new VehicleNameNotUniqueException(name).getMessage()
+                : "Имя уже занято записью, добавленной параллельно с импортом";
+        return new VehicleValidationException("Validation failed",
+                List.of(new VehicleImportErrors.RowError(row, "name", message)));
+    }
+
+    // уникальность имени уже проверена пачкой в checkUniqueNames, координаты - в resolveCoordinates
+    private void persistItem(VehicleImportItemDto item, Map<CoordinatesDao.XY, Coordinates> coords) {
+        VehicleDto dto = VehicleImportItemDto.toEntity(item);
+
+        Vehicle v = VehicleDto.toEntity(dto, null);
+        v.setCoordinates(coords.get(xy(item)));
+        dao.save(v);
+        aggregates.vehicleSaved(v); // id уже выдан последовательностью
+        columnStore.vehicleSaved(v);
+    }
+
+    // различные (x, y) пачки -> координаты, несколько запросов на всю пачку вместо трёх на запись
+    private Map<CoordinatesDao.XY, Coordinates> resolveCoordinates(List<VehicleImportItemDto> items) {
+        Set<CoordinatesDao.XY> pairs = new LinkedHashSet<>();
+        for (VehicleImportItemDto item : items) {
+            pairs.add(xy(item));
+        }
+        return coordinatesDao.findOrCreateAll(pairs);
+    }
+
+    private static CoordinatesDao.XY xy(VehicleImportItemDto item) {
+        // coordinates, x и y обязательны - проверено валидацией
+        return new CoordinatesDao.XY(item.getCoordinates().getX(), item.getCoordinates().getY());
+    }
+
+    // Ошибки валидации и уникальности имён пачки одним списком по номеру строки
+    // (сортировка стабильная: внутри строки сначала ошибки полей, потом имя)
+    private List<VehicleImportErrors.RowError> rowErrors(List<VehicleImportItemDto> items, int firstRowNumber,
+                                                         Map<String, Integer> namesInFile) {
+        List<VehicleImportErrors.RowError> errors = validate(items, firstRowNumber);
+        errors.addAll(checkUniqueNames(items, firstRowNumber, namesInFile));
+        errors.sort(Comparator.comparing(VehicleImportErrors.RowError::getRowNumber));
+        return errors;
+    }
+
+    // Уникальность имён пачки: дубликаты внутри файла - по хеш-таблице, существующие в БД - одним запросом.
+    // namesInFile копит имена между пачками потокового импорта
+    private List<VehicleImportErrors.RowError> checkUniqueNames(List<VehicleImportItemDto> items, int firstRowNumber,
+                                                                Map<String, Integer> namesInFile) {
+        List<VehicleImportErrors.RowError> errors = new ArrayList<>();
+        Map<String, Integer> candidates = new LinkedHashMap<>(); // имя -> номер строки, впервые в файле
+
+        for (int i = 0; i < items.size(); i++) {
+            String name = items.get(i).getName();
+            if (name == null || name.isBlank()) continue; // это уже ошибка валидации
+
+            int row = firstRowNumber + i;
+            Integer firstRow = namesInFile.putIfAbsent(name, row);
+            if (firstRow != null) {
+                errors.add(new VehicleImportErrors.RowError(row, "name",
+                        "Имя '" + name + "' уже встречается в файле в записи " + firstRow));
+            } else {
+                candidates.put(name, row);
+            }
+        }
+
+        Set<String> existing = dao.findExistingNames(candidates.keySet());
+        candidates.forEach((name, row) -> {
+            if (existing.contains(name)) {
+                errors.add(new VehicleImportErrors.RowError(row, "name",
+                        new VehicleNameNotUniqueException(name).getMessage()));
+            }
+        });
+        return errors;
+    }
+
+    // firstRowNumber - номер первой записи списка в файле (с 1)
+    private List<VehicleImportErrors.RowError> validate(List<VehicleImportItemDto> items, int firstRowNumber) {
+        List<VehicleImportErrors.RowError> validationErrors = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            VehicleImportItemDto item = items.get(i);
+            Set<ConstraintViolation<VehicleImportItemDto>> violations = BeanValidation.validate(item);
+
+            for (ConstraintViolation<VehicleImportItemDto> violation : violations) {
+                validationErrors.add(new VehicleImportErrors.RowError(
+                        firstRowNumber + i,
+                        violation.getPropertyPath().toString(),
+                        violation.getMessage()
+                ));
+            }
+        }
+        return validationErrors;
+    }
+
+    // операция сразу в состоянии RUNNING (синхронный импорт)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public VehicleImportOperation startImportOperation(String mode) {
+        VehicleImportOperation op = newOperation(mode, ImportJobState.RUNNING);
+        op.setStartedAt(LocalDateTime.now());
+        importOperationDao.save(op);
+        return op;
+    }
+
+    // операция-задача для асинхронного импорта, запустится позже на executor-е
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public VehicleImportOperation createQueuedOperation(String mode) {
+        VehicleImportOperation op = newOperation(mode, ImportJobState.QUEUED);
+        importOperationDao.save(op);
+        return op;
+    }
+
+    // после рестарта сервера executor пуст: QUEUED/RUNNING из прошлого запуска уже никто не выполнит
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public int failOrphanedOperations() {
+        return importOperationDao.failUnfinished("Импорт прерван перезапуском сервера");
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void markRunning(Long operationId) {
+        importOperationDao.findById(operationId).ifPresent(op -> {
+            op.setState(ImportJobState.RUNNING);
+            op.setStartedAt(LocalDateTime.now());
+        });
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void updateImportProgress(Long operationId, int processedCount) {
+        importOperationDao.findById(operationId).ifPresent(op -> {
+            op.setProcessedCount(processedCount);
+            wsHub.broadcastText(progressEvent(op));
+        });
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public VehicleImportOperation finishImportOperation(Long operationId, boolean success, int importedCount,
+                                                        String errorMessage) {
+        VehicleImportOperation op = importOperationDao.findById(operationId)
+                .orElseThrow(() -> new IllegalStateException("Import operation not found: " + operationId));
+        op.setStatus(success);
+        op.setState(success ? ImportJobState.SUCCEEDED : ImportJobState.FAILED);
+        op.setImportedCount(importedCount);
+        if (success) op.setProcessedCount(importedCount);
+        op.setErrorMessage(errorMessage);
+        op.setFinishedAt(LocalDateTime.now());
+        wsHub.broadcastText(progressEvent(op));
+        return op;
+    }
 
     @Transactional(Transactional.TxType.REQUIRES_NEW)
     public void logImportOperation(boolean success, Integer importedCount) {
-        VehicleImportOperation op = new VehicleImportOperation();
+        VehicleImportOperation op = newOperation(MODE_JSON, success ? ImportJobState.SUCCEEDED : ImportJobState.FAILED);
         op.setStatus(success);
         op.setImportedCount(importedCount);
+        op.setFinishedAt(LocalDateTime.now());
         importOperationDao.save(op);
     }
 
+    public Optional<VehicleImportJobDto> getJob(Long operationId) {
+        return importOperationDao.findById(operationId).map(VehicleImportJobDto::toDto);
+    }
+
+    private static VehicleImportOperation newOperation(String mode, ImportJobState state) {
+        VehicleImportOperation op = new VehicleImportOperation();
+        op.setMode(mode);
+        op.setState(state);
+        op.setImportedCount(0);
+        op.setProcessedCount(0);
+        return op;
+    }
+
+    // событие прогресса для /ws/vehicles; клиенты, ждущие только "refresh", его игнорируют
+    private static String progressEvent(VehicleImportOperation op) {
+        VehicleImportJobDto job = VehicleImportJobDto.toDto(op);
+        JsonObjectBuilder b = Json.createObjectBuilder()
+                .add("event", "importProgress")
+                .add("jobId", job.getId())
+                .add("state", String.valueOf(job.getState()))
+                .add("processedCount", job.getProcessedCount() == null ? 0 : job.getProcessedCount())
+                .add("rowsPerSecond", job.getRowsPerSecond());
+        if (job.getImportedCount() != null) b.add("importedCount", job.getImportedCount());
+        return b.build().toString();
+    }
+
+    // причина неудачи для истории/статуса задачи
+    static String describe(RuntimeException e) {
+        if (e instanceof VehicleValidationException vve && vve.getErrors() != null) {
+            StringBuilder sb = new StringBuilder(vve.getMessage());
+            vve.getErrors().stream().limit(20).forEach(err -> sb.append("; запись ")
+                    .append(err.getRowNumber()).append(", ").append(err.getField()).append(": ").append(err.getMessage()));
+            if (vve.getErrors().size() > 20) sb.append("; ...");
+            return sb.toString();
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
     public List<VehicleImportHistoryItemDto> getHistoryForAdmin(int limit) {
         return importOperationDao.findLastForAdmin(limit)
                 .stream()
@@ -1,35 +1,75 @@
 package ru.itmo.isitmolab.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.transaction.NotSupportedException;
+import jakarta.transaction.SystemException;
 import jakarta.transaction.Transactional;
+import jakarta.transaction.UserTransaction;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import ru.itmo.isitmolab.dao.CoordinatesDao;
 import ru.itmo.isitmolab.dao.VehicleDao;
+import ru.itmo.isitmolab.dto.GridTablePage;
 import ru.itmo.isitmolab.dto.GridTableRequest;
 import ru.itmo.isitmolab.dto.GridTableResponse;
 import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.exception.VehicleNameNotUniqueException;
 import ru.itmo.isitmolab.model.Coordinates;
 import ru.itmo.isitmolab.model.Vehicle;
-import ru.itmo.isitmolab.ws.VehicleWsService;
-
+import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
+import ru.itmo.isitmolab.util.VehicleExportFormat;
+import ru.itmo.isitmolab.util.VehicleExportWriter;
+import ru.itmo.isitmolab.util.count.GridCount;
+import ru.itmo.isitmolab.util.cache.GridPageCache;
+import ru.itmo.isitmolab.util.columnar.VehicleColumnStore;
+import ru.itmo.isitmolab.util.count.GridCountService;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.index.GridIndexAdvisor;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
+
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+@Instrumented
 @ApplicationScoped
 public class VehicleService {
 
     @Inject
     private VehicleDao dao;
     @Inject
-    private VehicleWsService wsHub;
-    @Inject
     private CoordinatesDao coordinatesDao;
+    @Inject
+    private GridCountService countService;
+    @Inject
+    private GridPageCache pageCache;
+    @Inject
+    private GridIndexAdvisor indexAdvisor;
+    @Inject
+    private VehicleColumnStore columnStore;
+    @PersistenceUnit
+    private EntityManagerFactory emf;
+    // кеши грида, агрегаты, колоночный снимок и WebSocket подписаны на запись ТС (см. VehicleChanged)
+    @Inject
+    private Event<VehicleChanged> vehicleChanged;
+    @Inject
+    private UserTransaction userTx;
+
+    // JAVA_OPTS="-Dgrid.fetch.single-query=true" - страница грида одним SQL (count(*) over()) вместо ids + IN + count
+    private final boolean singleQueryFetch = Boolean.getBoolean("grid.fetch.single-query");
+    // JAVA_OPTS="-Dvehicle.export.tx.timeout.s=3600" - таймаут транзакции выгрузки; у обычных транзакций - дефолт сервера (300 с),
+    // а выгрузка держит транзакцию всё время записи ответа и на медленном клиенте оборвалась бы уже после 200
+    private final int exportTxTimeout = Integer.getInteger("vehicle.export.tx.timeout.s", 3600);
 
     @Transactional
     public Long createNewVehicle(VehicleDto dto) {
@@ -41,24 +81,24 @@ public class VehicleService {
         Vehicle v = VehicleDto.toEntity(dto, null);
         v.setCoordinates(coords);
 
-        dao.save(v);
-        dao.flush(); // важно для GenerationType.IDENTITY (TomEE/OpenJPA выставляет id только после flush/commit)
+        dao.save(v); // id выдаётся из последовательности уже при persist, flush не нужен
         Long id = v.getId();
         if (id == null) {
             throw new WebApplicationException(
                     Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                             .type(MediaType.APPLICATION_JSON_TYPE)
-                            .entity(Map.of("message", "Vehicle создан, но id не сгенерировался (flush не дал id)"))
+                            .entity(Map.of("message", "Vehicle создан, но id не сгенерировался"))
                             .build()
             );
         }
-        wsHub.broadcastText("refresh");
+        vehicleChanged.fire(VehicleChanged.created(v));
         return id;
     }
 
     @Transactional
     public void updateVehicle(Long id, VehicleDto dto) {
         Vehicle current = dao.findById(id).orElseThrow(() -> new WebApplicationException("Vehicle not found: " + id, Response.Status.NOT_FOUND));
+        VehicleDto before = VehicleDto.toDto(current); // для подписчиков WebSocket, у которых строка выходит из фильтра
 
         // ОГРАНИЧЕНИЕ
         if (dto.getName() != null && !dto.getName().equals(current.getName()))
@@ -73,7 +113,7 @@ public class VehicleService {
         VehicleDto.toEntity(dto, current);
 
         dao.save(current);
-        wsHub.broadcastText("refresh");
+        vehicleChanged.fire(VehicleChanged.updated(before, current));
     }
 
     @Transactional
@@ -87,21 +127,86 @@ public class VehicleService {
     @Transactional
     public void deleteVehicleById(Long id) {
         try {
-            dao.findById(id).orElseThrow(() -> new WebApplicationException("Vehicle not found: " + id, Response.Status.NOT_FOUND));
+            Vehicle v = dao.findById(id).orElseThrow(() -> new WebApplicationException("Vehicle not found: " + id, Response.Status.NOT_FOUND));
+            Integer version = v.getVersion();
+            VehicleDto before = VehicleDto.toDto(v);
             dao.deleteById(id);
+            vehicleChanged.fire(VehicleChanged.deleted(id, version, before));
         } catch (OptimisticLockException e) {
             throw new WebApplicationException("The vehicle was already deleted by another user.", Response.Status.CONFLICT);
         }
     }
 
     public GridTableResponse<VehicleDto> queryVehiclesTable(GridTableRequest req) {
-        List<Vehicle> rows = dao.findPageByGrid(req);
-        long total = dao.countByGrid(req);
-        List<VehicleDto> dtos = rows.stream()
+        indexAdvisor.record("vehicle", req, VehicleDao.DEFAULT_SORT);
+        // разобранный фильтр - ключ кешей страниц и итогов; запоминается в req, DAO его не разбирает повторно
+        GridFilter filter = GridTablePredicateBuilder.filter(emf.getMetamodel().entity(Vehicle.class), req);
+        return pageCache.get(GridPageCache.VEHICLE, req, filter, GridPageCache.GRID_TABLES,
+                () -> loadVehiclesTable(req, filter));
+    }
+
+    private GridTableResponse<VehicleDto> loadVehiclesTable(GridTableRequest req, GridFilter filter) {
+        // колоночный снимок в памяти (-Dgrid.columnar.enabled), если он умеет этот фильтр/сортировку
+        Optional<GridTableResponse<VehicleDto>> fromMemory = columnStore.query(req);
+        if (fromMemory.isPresent())
+            return fromMemory.get();
+
+        if (singleQueryFetch) {
+            // страница и итог одним запросом; итог дозапрашиваем, только если окно его не дало
+            GridTablePage<VehicleDto> page = dao.findDtoPageByGrid(req);
+            GridCount total = page.getTotal() != null
+                    ? new GridCount(page.getTotal(), true)
+                    : countService.count("vehicle", filter, () -> dao.countByGrid(req), dao::estimateCount);
+            return new GridTableResponse<>(page.getRows(), (int) total.getTotal(), page.getNextCursor(), total.isExact());
+        }
+
+        GridTablePage<Vehicle> page = dao.findPageByGrid(req);
+        GridCount total = countService.count("vehicle", filter,
+                () -> dao.countByGrid(req), dao::estimateCount);
+        List<VehicleDto> dtos = page.getRows().stream()
                 .map(VehicleDto::toDto)
                 .toList();
 
-        return new GridTableResponse<>(dtos, (int) total);
+        return new GridTableResponse<>(dtos, (int) total.getTotal(), page.getNextCursor(), total.isExact());
+    }
+
+    // Вся выборка грида (filterModel/sortModel, без окна) потоком в out; возвращает число строк.
+    // Транзакция держит курсор открытым, пока строки пишутся в ответ, поэтому она своя, с таймаутом exportTxTimeout;
+    // только чтение - в конце откатывается
+    public long exportVehicles(GridTableRequest req, VehicleExportFormat format, OutputStream out) throws IOException {
+        beginExportTx();
+        try (Stream<Object[]> rows = dao.streamExportRows(req);
+             VehicleExportWriter writer = new VehicleExportWriter(out, format)) {
+            writer.begin();
+            for (Object[] r : (Iterable<Object[]>) rows::iterator)
+                writer.row(r);
+            writer.end();
+            return writer.getRows();
+        } finally {
+            rollbackExportTx();
+        }
+    }
+
+    private void beginExportTx() {
+        try {
+            // таймаут действует на транзакции, начатые этим потоком после вызова, - сразу возвращаем дефолт (0)
+            userTx.setTransactionTimeout(exportTxTimeout);
+            try {
+                userTx.begin();
+            } finally {
+                userTx.setTransactionTimeout(0);
+            }
+        } catch (NotSupportedException | SystemException e) {
+            throw new IllegalStateException("Cannot begin export transaction", e);
+        }
+    }
+
+    private void rollbackExportTx() {
+        try {
+            userTx.rollback();
+        } catch (SystemException | IllegalStateException e) {
+            // транзакцию уже завершил менеджер (таймаут) - курсор закрыт, ошибка записи уже ушла наверх
+        }
     }
 
     public Coordinates resolveCoordinatesForDto(VehicleDto dto) {
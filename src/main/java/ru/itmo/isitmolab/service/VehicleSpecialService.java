@@ -5,24 +5,30 @@ import jakarta.inject.Inject;
 import ru.itmo.isitmolab.dao.VehicleSpecialDao;
 import ru.itmo.isitmolab.dto.VehicleDto;
 import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.util.aggregate.VehicleAggregates;
+import ru.itmo.isitmolab.util.metrics.Instrumented;
 
 import java.util.List;
 import java.util.Optional;
 
+@Instrumented
 @ApplicationScoped
 public class VehicleSpecialService {
 
     @Inject
     VehicleSpecialDao specialDao;
 
+    @Inject
+    VehicleAggregates aggregates;
+
     public Optional<VehicleDto> findAnyWithMinDistance() {
-        return specialDao.findAnyWithMinDistanceId()
+        return aggregates.minDistanceId(specialDao::findAnyWithMinDistanceId)
                 .flatMap(specialDao::loadOneWithGraph)
                 .map(VehicleDto::toDto);
     }
 
     public long countFuelConsumptionGreaterThan(float v) {
-        return specialDao.countFuelConsumptionGreaterThan(v);
+        return aggregates.countFuelGreaterThan(v, () -> specialDao.countFuelConsumptionGreaterThan(v));
     }
 
     public List<VehicleDto> listFuelConsumptionGreaterThan(float v) {
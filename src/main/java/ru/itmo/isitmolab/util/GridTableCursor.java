@@ -0,0 +1,237 @@
+package ru.itmo.isitmolab.util;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.metamodel.ManagedType;
+import lombok.experimental.UtilityClass;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaExpression;
+import ru.itmo.isitmolab.dto.GridTableSortModel;
+import ru.itmo.isitmolab.dto.ValidationErrors;
+import ru.itmo.isitmolab.exception.RequestValidationException;
+import ru.itmo.isitmolab.util.filter.GridColumn;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// Keyset (seek) пагинация: курсор = значения ключей сортировки последней строки страницы + её id.
+// Следующая страница ищется условием "строка идёт после курсора" вместо OFFSET,
+// поэтому стоимость страницы не зависит от глубины прокрутки.
+@UtilityClass
+public final class GridTableCursor {
+
+    // Курсор - base64url от JSON-массива: [сигнатура сортировки, значение1, ..., id]
+    // Сигнатура нужна, чтобы не применить курсор от другой сортировки
+
+    // Итоговая сортировка для keyset: sortModel (или дефолт creationTime desc) + id как tie-breaker,
+    // без уникального последнего ключа позиция в выборке неоднозначна
+    public static List<GridTableSortModel> effectiveSort(List<GridTableSortModel> sortModel,
+                                                         List<GridTableSortModel> defaultSort) {
+        List<GridTableSortModel> keys = new ArrayList<>();
+        if (sortModel != null && !sortModel.isEmpty()) {
+            for (GridTableSortModel s : sortModel) {
+                if (s == null || s.getColId() == null || s.getColId().isBlank()) continue;
+                keys.add(new GridTableSortModel(s.getColId(), isDesc(s) ? "desc" : "asc"));
+            }
+        }
+        if (keys.isEmpty()) keys.addAll(defaultSort);
+
+        boolean hasId = keys.stream().anyMatch(k -> "id".equals(k.getColId()));
+        if (!hasId) {
+            String dir = keys.isEmpty() ? "asc" : keys.get(keys.size() - 1).getSort();
+            keys.add(new GridTableSortModel("id", dir));
+        }
+        return keys;
+    }
+
+    public static boolean isDesc(GridTableSortModel s) {
+        return "desc".equalsIgnoreCase(s.getSort());
+    }
+
+    public static String encode(List<GridTableSortModel> keys, Object[] values) {
+        JsonArrayBuilder arr = Json.createArrayBuilder();
+        arr.add(signature(keys));
+        for (Object v : values) {
+            if (v == null) arr.addNull();
+            else if (v instanceof Enum<?> e) arr.add(e.name());
+            else arr.add(String.valueOf(v)); // toString у Float/Double/LocalDateTime обратимо парсится
+        }
+        String json = arr.build().toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Разбирает курсор и приводит значения к java-типам путей сортировки
+    public static Object[] decode(String cursor, List<GridTableSortModel> keys, List<Path<?>> paths) {
+        List<Class<?>> types = new ArrayList<>(paths.size());
+        for (Path<?> p : paths) types.add(p.getJavaType());
+        return decodeTyped(cursor, keys, types);
+    }
+
+    // то же по java-типам ключей - для сортировки в памяти без Criteria (VehicleColumnStore)
+    public static Object[] decodeTyped(String cursor, List<GridTableSortModel> keys, List<Class<?>> types) {
+        JsonArray arr;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            try (JsonReader reader = Json.createReader(new StringReader(json))) {
+                arr = reader.readArray();
+            }
+        } catch (IllegalArgumentException | JsonException | IllegalStateException e) {
+            throw invalid("Курсор повреждён");
+        }
+
+        if (arr.size() != keys.size() + 1
+                || arr.get(0).getValueType() != JsonValue.ValueType.STRING
+                || !signature(keys).equals(arr.getString(0))) {
+            throw invalid("Курсор не соответствует текущей сортировке");
+        }
+
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            JsonValue jv = arr.get(i + 1);
+            if (jv.getValueType() == JsonValue.ValueType.NULL) continue;
+            if (!(jv instanceof JsonString js)) throw invalid("Курсор повреждён");
+            try {
+                values[i] = parse(types.get(i), js.getString());
+            } catch (RuntimeException e) {
+                throw invalid("Курсор повреждён");
+            }
+        }
+        if (values[values.length - 1] == null) throw invalid("Курсор повреждён");
+        return values;
+    }
+
+    // (k1, ..., kn) "после" (v1, ..., vn) с учётом направления каждого ключа.
+    // Порядок NULL - как у PostgreSQL по умолчанию: ASC -> NULLS LAST, DESC -> NULLS FIRST.
+    // Условие должно быть диапазоном по индексу (col, id), иначе стоимость страницы растёт с глубиной:
+    //  - все ключи в одну сторону (в т.ч. дефолт creation_time DESC, id DESC) -> row-value (k1, ..., id) < (?, ..., ?),
+    //    PostgreSQL начинает index scan прямо с курсора;
+    //  - направления разные -> OR-развёртка (k1 after v1) OR (k1 = v1 AND k2 after v2) OR ...,
+    //    к ней AND-ом избыточная граница по первому ключу (k1 <= v1 / k1 >= v1) - с неё начинается scan
+    // Ветка "OR k IS NULL" нужна только nullable-колонкам (по метамодели, GridColumn.isNullable)
+    public static Predicate seekPredicate(HibernateCriteriaBuilder cb, ManagedType<?> model, List<Path<?>> paths,
+                                          List<GridTableSortModel> keys, Object[] values) {
+        boolean[] nullable = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++)
+            nullable[i] = GridColumn.of(model, keys.get(i).getColId()).isNullable();
+
+        if (rowValueApplies(keys, values, nullable))
+            return rowValue(cb, paths, isDesc(keys.get(0)), values);
+
+        List<Predicate> or = new ArrayList<>();
+        List<Predicate> prefix = new ArrayList<>(); // равенство всех предыдущих ключей
+
+        for (int i = 0; i < keys.size(); i++) {
+            Path<?> p = paths.get(i);
+            Predicate after = after(cb, p, isDesc(keys.get(i)), values[i], nullable[i]);
+            if (after != null) {
+                List<Predicate> and = new ArrayList<>(prefix);
+                and.add(after);
+                or.add(cb.and(and.toArray(new Predicate[0])));
+            }
+            prefix.add(values[i] == null ? cb.isNull(p) : cb.equal(p, values[i]));
+        }
+        if (or.isEmpty())
+            return cb.disjunction();
+
+        Predicate seek = cb.or(or.toArray(new Predicate[0]));
+        Predicate bound = leadingBound(cb, paths.get(0), isDesc(keys.get(0)), values[0], nullable[0]);
+        return bound == null ? seek : cb.and(bound, seek);
+    }
+
+    // (a, b) < (x, y) в PostgreSQL: сравнение попарно до первого неравного, NULL в паре -> строка не проходит.
+    // Это совпадает с "после курсора", если направление у всех ключей одно, в курсоре нет NULL
+    // и NULL-строки идут до курсора: DESC (NULLS FIRST) или колонки без NULL
+    private static boolean rowValueApplies(List<GridTableSortModel> keys, Object[] values, boolean[] nullable) {
+        boolean desc = isDesc(keys.get(0));
+        for (int i = 0; i < keys.size(); i++) {
+            if (isDesc(keys.get(i)) != desc || values[i] == null || (nullable[i] && !desc))
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate rowValue(HibernateCriteriaBuilder cb, List<Path<?>> paths, boolean desc, Object[] values) {
+        List<JpaExpression<?>> columns = new ArrayList<>(paths.size());
+        List<JpaExpression<?>> cursor = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            columns.add((JpaExpression<?>) paths.get(i));
+            cursor.add(cb.value(values[i]));
+        }
+        Expression left = (Expression) cb.tuple(Object[].class, columns);
+        Expression right = (Expression) cb.tuple(Object[].class, cursor);
+        return desc ? cb.lessThan(left, right) : cb.greaterThan(left, right);
+    }
+
+    // избыточная граница по первому ключу: все строки после курсора ей удовлетворяют, поэтому результат
+    // не меняется, а у планировщика появляется Index Cond для начала scan. Для nullable ASC такой нет
+    // (после курсора идут и NULL-ы, "k1 >= v1 OR k1 IS NULL" - снова OR), для NULL в курсоре - тоже
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate leadingBound(CriteriaBuilder cb, Path<?> path, boolean desc, Object v, boolean nullable) {
+        if (v == null || (nullable && !desc))
+            return null;
+        Expression<Comparable> exp = (Expression<Comparable>) path;
+        Comparable val = (Comparable) v;
+        return desc ? cb.lessThanOrEqualTo(exp, val) : cb.greaterThanOrEqualTo(exp, val);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate after(CriteriaBuilder cb, Path<?> path, boolean desc, Object v, boolean nullable) {
+        if (v == null) {
+            // ASC: null-ы в конце, после них ничего нет; DESC: null-ы в начале, после них - все непустые
+            return desc ? cb.isNotNull(path) : null;
+        }
+        Expression<Comparable> exp = (Expression<Comparable>) path;
+        Comparable val = (Comparable) v;
+        if (desc)
+            return cb.lessThan(exp, val);
+        return nullable ? cb.or(cb.greaterThan(exp, val), cb.isNull(path)) : cb.greaterThan(exp, val);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(Class<?> t, String s) {
+        if (t.isEnum())
+            return Enum.valueOf((Class<Enum>) t, s);
+        if (t.equals(Integer.class) || t.equals(Integer.TYPE))
+            return Integer.valueOf(s);
+        if (t.equals(Long.class) || t.equals(Long.TYPE))
+            return Long.valueOf(s);
+        if (t.equals(Double.class) || t.equals(Double.TYPE))
+            return Double.valueOf(s);
+        if (t.equals(Float.class) || t.equals(Float.TYPE))
+            return Float.valueOf(s);
+        if (t.equals(BigDecimal.class))
+            return new BigDecimal(s);
+        if (t.equals(LocalDateTime.class))
+            return LocalDateTime.parse(s);
+        return s;
+    }
+
+    private static String signature(List<GridTableSortModel> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (GridTableSortModel k : keys) {
+            if (!sb.isEmpty()) sb.append(',');
+            sb.append(k.getColId()).append(isDesc(k) ? ":d" : ":a");
+        }
+        return sb.toString();
+    }
+
+    private static RequestValidationException invalid(String message) {
+        return new RequestValidationException("Invalid cursor",
+                List.of(new ValidationErrors.FieldError("cursor", message)));
+    }
+}
@@ -1,7 +1,12 @@
 package ru.itmo.isitmolab.util;
 
 import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.ManagedType;
 import lombok.experimental.UtilityClass;
+import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.util.filter.GridColumn;
+import ru.itmo.isitmolab.util.filter.GridCondition;
+import ru.itmo.isitmolab.util.filter.GridFilter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -10,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import static ru.itmo.isitmolab.util.DateParsers.parseToLocalDate;
 
@@ -40,31 +46,65 @@ public final class GridTablePredicateBuilder {
 //        }
 //    }
 
-    //
-    public static List<Predicate> build(CriteriaBuilder cb, Root<?> root, Map<String, Object> filterModel) {
-        List<Predicate> out = new ArrayList<>(); // все условия (WHERE)
+    // JAVA_OPTS="-Dgrid.text.search=trigram|fts"; при старте GridIndexAdvisor откатывает fts на trigram,
+    // если в БД нет fn_text_matches или индекса под него
+    private static volatile TextSearchMode textSearchMode =
+            TextSearchMode.parse(System.getProperty("grid.text.search"), TextSearchMode.TRIGRAM);
+
+    // слова, которые парсер tsvector гарантированно выделит отдельной лексемой (не-ASCII зависит от локали БД)
+    private static final Pattern FTS_WORD = Pattern.compile("[a-z0-9]+");
+
+    public static TextSearchMode getTextSearchMode() {
+        return textSearchMode;
+    }
 
+    public static void setTextSearchMode(TextSearchMode mode) {
+        textSearchMode = mode;
+    }
+
+    // Разбор filterModel в GridFilter: один раз на запрос, дальше фильтр применяется к любому Root сущности.
+    // Колонки берутся из кеша GridColumn, значения приводятся к типу колонки здесь же
+    public static GridFilter compile(ManagedType<?> model, Map<String, Object> filterModel) {
         if (filterModel == null || filterModel.isEmpty())
-            return out; // никаких ограничений и фильтров
+            return new GridFilter(model.getJavaType(), filterModel, List.of()); // никаких ограничений и фильтров
 
+        List<GridCondition> out = new ArrayList<>();
         for (var entry : filterModel.entrySet()) { // в массив мап
-            String col = entry.getKey(); // colId
             @SuppressWarnings("unchecked")
             Map<String, Object> fm = (Map<String, Object>) entry.getValue(); // сами фильтры внутри colId поля
-            String ft = (String) fm.get("filterType");
+            GridColumn column = GridColumn.of(model, entry.getKey());
+
+            GridCondition c = switch (String.valueOf(fm.get("filterType"))) {
+                case "text" -> text(column, fm);
+                case "number" -> number(column, fm);
+                case "date" -> date(column, fm);
+                case "set" -> set(column, fm);
+                default -> null;
+            };
+            if (c != null)
+                out.add(c);
+        }
+        return new GridFilter(model.getJavaType(), filterModel, out);
+    }
 
-            Path<?> path = resolvePath(root, col);
+    // Фильтр запроса для сущности root: разбирается при первом обращении и запоминается в запросе,
+    // поэтому страница и count(*) по одному GridTableRequest разбирают filterModel один раз
+    public static GridFilter filter(Root<?> root, GridTableRequest req) {
+        return filter(root.getModel(), req);
+    }
 
-            switch (String.valueOf(ft)) {
-                case "text" -> handleText(cb, out, path, fm);
-                case "number" -> handleNumber(cb, out, path, fm);
-                case "date" -> handleDate(cb, out, path, fm);
-                case "set" -> handleSet(cb, out, path, fm);
-                default -> {
-                }
-            }
+    // то же по модели сущности - сервисы разбирают фильтр до кеша страниц, ключ кеша - GridFilter.key()
+    public static GridFilter filter(ManagedType<?> model, GridTableRequest req) {
+        GridFilter f = req.getCompiledFilter();
+        if (f == null || !f.isFor(model.getJavaType(), req.filterModel)) {
+            f = compile(model, req.filterModel);
+            req.setCompiledFilter(f);
         }
-        return out;
+        return f;
+    }
+
+    public static List<Predicate> build(CriteriaBuilder cb, Root<?> root, Map<String, Object> filterModel) {
+        return compile(root.getModel(), filterModel).toPredicates(cb, root);
     }
 
     // resolvePath берёт строку вида "admin.id" или "coordinates.x", создаёт нужные JOIN и в конце возвращает Path до
@@ -76,211 +116,178 @@ public final class GridTablePredicateBuilder {
         if (colId == null || colId.isBlank())
             return root.get("id");
 
-        // разбиваем "admin.id" -> ["admin","id"], "coordinates.x" -> ["coordinates","x"]
-        String[] parts = colId.split("\\.");
-
-        // p - текущий путь Path от которого будет браться .get("...") к полю
-        // from - текущий источник (From), от которого можно делать .join("...")
-        // Изначально оба смотрят на корневую таблицу (root)
-        Path<?> p = root;
-        From<?, ?> from = root;
-
-        // по сегментам пути
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i]; // текущий сегмент пути ("admin" или "id")
-
-            boolean isLast = (i == parts.length - 1); // последний ли это сегмент
-            if (!isLast) {
-                // если сегмент НЕ последний - это ассоциация (ManyToOne/OneToOne),
-                // т.е. нужен JOIN. Но прежде чем создавать новый, попробуем найти существующий.
-
-                Join<?, ?> existing = null;
-                for (Join<?, ?> j : from.getJoins()) { // пробегаем все JOIN'ы, уже повешенные на текущий 'from'
-                    if (j.getAttribute() != null && j.getAttribute().getName().equals(part)) {
-                        existing = j; // нашли join по имени атрибута ("admin")
-                        break;
-                    }
-                }
-
-                if (existing != null) {
-                    // если join уже существует - просто переиспользуем его
-                    from = existing;  // теперь текущий источник - это найденный join (например, таблица admin)
-                    p = from;         // и путь также указывает на этот join
-                    continue;         // идём к следующему сегменту
-                }
-
-                // Если подходящего join'а ещё нет - пробуем его создать
-                try {
-                    // from.join(part, LEFT) создаст LEFT JOIN по ассоциации 'part'
-                    // (например, LEFT JOIN admin a ON a.id = v.admin_id).
-                    from = from.join(part, JoinType.LEFT);
-                    p = from; // текущий путь теперь указывает на только что созданный join
-                    continue; // идём к следующему сегменту
-                } catch (IllegalArgumentException ignored) {
-                    // Это fallback: если "part" - не ассоциация (а, скажем, вложенная структура без join),
-                    // провайдер может бросить IllegalArgumentException. Тогда JOIN мы не делаем,
-                    // и упадём в код ниже (p = p.get(part)) - т.е. просто возьмём под-путь без join
-                }
-            }
-
-            // Если это ПОСЛЕДНИЙ сегмент (или join не создался), берём под-путь через .get("part"):
-            // - если 'p' указывает на сущность/embeddable - это даст колонку (например, "id" или "x")
-            // - если 'p' указывает на join - это даст колонку присоединённой таблицы
-            p = p.get(part);
-
-            // Иногда p после .get(...) может оказаться чем-то, что тоже является From (редкие кейсы:
-            // провайдер трактует вложенную сущность как отдельный источник)
-            // Тогда обновим 'from', чтобы следующие циклы могли делать join уже оттуда
-            if (p instanceof From<?, ?> f)
-                from = f;
-        }
-
-        // Возвращаем конечный Path<?> - это «указатель» на нужную колонку (атрибут)
-        // Его потом можно использовать в предикатах/сортировках: cb.equal(p, ...), cb.asc(p), и т.д
-        return p;
+        return GridColumn.of(root.getModel(), colId).path(root);
     }
 
-    private static void handleText(CriteriaBuilder cb, List<Predicate> out, Path<?> path, Map<String, Object> fm) {
+    private static GridCondition text(GridColumn column, Map<String, Object> fm) {
         String type = (String) fm.get("type"); // тип текстового фильтра (filterModel.type.type)
         String val = (String) fm.get("filter"); // значение, что введено в фильтр
-        if (val == null || val.isBlank())
-            return;
+        if (val == null || val.isBlank() || type == null)
+            return null;
 
         // регистронезависимое сравнение
-        Expression<String> exp = cb.lower(path.as(String.class));
         String p = val.toLowerCase(Locale.ROOT);
+        String lp = escapeLike(p); // % и _ из ввода ищутся буквально
 
+        // % - вайлдкард подстановочный символ в SQL для оператора LIKE
+        GridCondition.TextOp op;
+        String pattern = null;
         switch (type) {
-            // % - вайлдкард подстановочный символ в SQL для оператора LIKE
-            case "contains" -> out.add(cb.like(exp, "%" + p + "%"));
-            case "equals" -> out.add(cb.equal(exp, p));
-            case "startsWith" -> out.add(cb.like(exp, p + "%"));
-            case "endsWith" -> out.add(cb.like(exp, "%" + p));
-            case "notEqual" -> out.add(cb.notEqual(exp, p));
+            case "contains" -> {
+                op = GridCondition.TextOp.CONTAINS;
+                pattern = "%" + lp + "%";
+            }
+            case "equals" -> op = GridCondition.TextOp.EQUALS;
+            case "startsWith" -> {
+                op = GridCondition.TextOp.STARTS_WITH;
+                pattern = lp + "%";
+            }
+            case "endsWith" -> {
+                op = GridCondition.TextOp.ENDS_WITH;
+                pattern = "%" + lp;
+            }
+            case "notEqual" -> op = GridCondition.TextOp.NOT_EQUAL;
             default -> {
+                return null;
             }
         }
+
+        String fts = textSearchMode == TextSearchMode.FTS && column.isString() ? ftsQuery(type, p) : null;
+        return new GridCondition.Text(column, op, p, pattern, fts);
     }
 
-    private static void handleNumber(CriteriaBuilder cb, List<Predicate> out, Path<?> path, Map<String, Object> fm) {
-        String type = (String) fm.get("type");
-        Number f1 = toNumber(fm.get("filter"));
-        Number f2 = toNumber(fm.get("filterTo"));
-
-        Class<?> jt = path.getJavaType(); // реальный Java-тип поля в JPA-модели
-
-        // кастим path к точному типу поля
-        // сравнивать Expression<Integer> с Double нельзя
-        if (jt == Integer.class || jt == Integer.TYPE) {
-            addNumber(cb, out, type, path.as(Integer.class),
-                    f1 != null ? f1.intValue() : null,
-                    f2 != null ? f2.intValue() : null);
-        } else if (jt == Long.class || jt == Long.TYPE) {
-            addNumber(cb, out, type, path.as(Long.class),
-                    f1 != null ? f1.longValue() : null,
-                    f2 != null ? f2.longValue() : null);
-        } else if (jt == Float.class || jt == Float.TYPE) {
-            addNumber(cb, out, type, path.as(Float.class),
-                    f1 != null ? f1.floatValue() : null,
-                    f2 != null ? f2.floatValue() : null);
-        } else if (jt == Double.class || jt == Double.TYPE) {
-            addNumber(cb, out, type, path.as(Double.class),
-                    f1 != null ? f1.doubleValue() : null,
-                    f2 != null ? f2.doubleValue() : null);
-        } else if (jt == BigDecimal.class) {
-            addNumber(cb, out, type, path.as(BigDecimal.class),
-                    f1 != null ? new BigDecimal(f1.toString()) : null, // toString -- чтобы без погрешности float получить
-                    f2 != null ? new BigDecimal(f2.toString()) : null);
+    // tsquery из слов, которые в подходящей строке обязаны быть целыми лексемами:
+    // слово между пробелами - целиком, последнее у contains/startsWith - префикс (word:*),
+    // первое у contains/endsWith может быть концом лексемы - не используется. null - предфильтр не нужен
+    static String ftsQuery(String type, String p) {
+        String[] words = p.trim().split("\\s+");
+        if (words.length < 2 || !p.equals(p.trim())) return null; // однословный ввод - хватает триграмм
+        for (String w : words) {
+            if (!FTS_WORD.matcher(w).matches()) return null;
+        }
+
+        boolean firstWhole = "equals".equals(type) || "startsWith".equals(type);
+        boolean lastWhole = "equals".equals(type) || "endsWith".equals(type);
+        if (!firstWhole && !lastWhole && !"contains".equals(type)) return null;
+
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < words.length; i++) {
+            if (i == 0 && !firstWhole) continue;
+            if (i == words.length - 1 && !lastWhole) {
+                if (i > 0 || firstWhole) terms.add(words[i] + ":*");
+                continue;
+            }
+            terms.add(words[i]);
         }
+        return terms.isEmpty() ? null : String.join(" & ", terms);
     }
 
-    // сборка Predicate под нужную операцию
-    private static <T extends Number & Comparable<T>> void addNumber(
-            CriteriaBuilder cb, List<Predicate> out, String type,
-            Expression<T> num, T v1, T v2
-    ) {
-        if (v1 == null && !"inRange".equals(type))
-            return; // если операция не inRange и нет первого значения - фильтровать нечего
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 
-        switch (type) {
-            case "equals" -> out.add(cb.equal(num, v1));                            // num =  v1
-            case "notEqual" -> out.add(cb.notEqual(num, v1));                       // num <> v1
-            case "lessThan" -> out.add(cb.lessThan(num, v1));                       // num <  v1
-            case "lessThanOrEqual" -> out.add(cb.lessThanOrEqualTo(num, v1));       // num <= v1
-            case "greaterThan" -> out.add(cb.greaterThan(num, v1));                 // num >  v1
-            case "greaterThanOrEqual" -> out.add(cb.greaterThanOrEqualTo(num, v1)); // num >= v1
+    private static GridCondition number(GridColumn column, Map<String, Object> fm) {
+        String type = (String) fm.get("type");
+        // кастим значения фильтра к точному типу поля: сравнивать Integer-колонку с Double нельзя
+        Comparable<?> v1 = toColumnNumber(column.getJavaType(), toNumber(fm.get("filter")));
+        Comparable<?> v2 = toColumnNumber(column.getJavaType(), toNumber(fm.get("filterTo")));
+        if (type == null || !isNumeric(column.getJavaType()))
+            return null;
+        if (v1 == null && !"inRange".equals(type))
+            return null; // если операция не inRange и нет первого значения - фильтровать нечего
+
+        return switch (type) {
+            case "equals" -> compare(column, GridCondition.CompareOp.EQ, v1, null);             // num =  v1
+            case "notEqual" -> compare(column, GridCondition.CompareOp.NE, v1, null);           // num <> v1
+            case "lessThan" -> compare(column, GridCondition.CompareOp.LT, v1, null);           // num <  v1
+            case "lessThanOrEqual" -> compare(column, GridCondition.CompareOp.LE, v1, null);    // num <= v1
+            case "greaterThan" -> compare(column, GridCondition.CompareOp.GT, v1, null);        // num >  v1
+            case "greaterThanOrEqual" -> compare(column, GridCondition.CompareOp.GE, v1, null); // num >= v1
             case "inRange" -> {
-                if (v1 != null && v2 != null) {
-                    // Полный диапазон [v1; v2]
-                    out.add(cb.and(cb.greaterThanOrEqualTo(num, v1), cb.lessThanOrEqualTo(num, v2)));
-                } else if (v1 != null) {
-                    // только левая граница: [v1; +inf)
-                    out.add(cb.greaterThanOrEqualTo(num, v1));
-                } else if (v2 != null) {
-                    // только правая граница: (-inf; v2]
-                    out.add(cb.lessThanOrEqualTo(num, v2));
-                }
-            }
-            default -> {
+                if (v1 != null && v2 != null)
+                    yield compare(column, GridCondition.CompareOp.BETWEEN, v1, v2); // полный диапазон [v1; v2]
+                if (v1 != null)
+                    yield compare(column, GridCondition.CompareOp.GE, v1, null);    // только левая граница: [v1; +inf)
+                if (v2 != null)
+                    yield compare(column, GridCondition.CompareOp.LE, v2, null);    // только правая граница: (-inf; v2]
+                yield null;
             }
-        }
+            default -> null;
+        };
     }
 
-    private static void handleDate(CriteriaBuilder cb, List<Predicate> out, Path<?> path, Map<String, Object> fm) {
-        if (!LocalDateTime.class.isAssignableFrom(path.getJavaType()))
-            return;
+    private static GridCondition date(GridColumn column, Map<String, Object> fm) {
+        if (!LocalDateTime.class.isAssignableFrom(column.getJavaType()))
+            return null;
 
         String type = (String) fm.get("type");
         String d1s = (String) fm.get("dateFrom");
         String d2s = (String) fm.get("dateTo");
-        if (d1s == null || d1s.isBlank())
-            return;
+        if (d1s == null || d1s.isBlank() || type == null)
+            return null;
 
         LocalDate d1 = parseToLocalDate(d1s);
         if (d1 == null)
-            return;
+            return null;
 
         LocalDateTime start = d1.atStartOfDay();
-        Expression<LocalDateTime> dt = path.as(LocalDateTime.class);
+        LocalDateTime nextDay = d1.plusDays(1).atStartOfDay();
 
-        switch (type) {
-            case "equals" -> {
-                LocalDateTime end = d1.plusDays(1).atStartOfDay();
-                out.add(cb.between(dt, start, end));
-            }
-            case "lessThan" -> out.add(cb.lessThan(dt, start));
-            case "greaterThan" -> {
-                LocalDateTime end = d1.plusDays(1).atStartOfDay();
-                out.add(cb.greaterThanOrEqualTo(dt, end));
-            }
+        return switch (type) {
+            case "equals" -> compare(column, GridCondition.CompareOp.BETWEEN, start, nextDay);
+            case "lessThan" -> compare(column, GridCondition.CompareOp.LT, start, null);
+            case "greaterThan" -> compare(column, GridCondition.CompareOp.GE, nextDay, null);
             case "inRange" -> {
                 LocalDate d2 = parseToLocalDate(d2s);
                 if (d2 == null) d2 = d1;
-                LocalDateTime end = d2.plusDays(1).atStartOfDay();
-                out.add(cb.between(dt, start, end));
-            }
-            default -> {
+                yield compare(column, GridCondition.CompareOp.BETWEEN, start, d2.plusDays(1).atStartOfDay());
             }
-        }
+            default -> null;
+        };
     }
 
-    private static void handleSet(CriteriaBuilder cb, List<Predicate> out, Path<?> path, Map<String, Object> fm) {
-        @SuppressWarnings("unchecked")
+    private static GridCondition set(GridColumn column, Map<String, Object> fm) {
         // список значений из фильтра
         // "filterType": "set", "values": ["KEROSENE","NUCLEAR"]
+        @SuppressWarnings("unchecked")
         List<String> values = (List<String>) fm.get("values");
         if (values == null || values.isEmpty())
-            return;
+            return null;
 
-        CriteriaBuilder.In<Object> in = cb.in(path); // предикат IN (...) для столбца, на который указывает path.
-        for (String v : values)// Каждое входное значение из UI приходит строкой - приводим к типу колонки
-            in.value(castForPath(path, v));
-        out.add(in);
+        List<Object> typed = new ArrayList<>(values.size());
+        for (String v : values) // Каждое входное значение из UI приходит строкой - приводим к типу колонки
+            typed.add(castForColumn(column.getJavaType(), v));
+        return new GridCondition.In(column, List.copyOf(typed));
+    }
+
+    private static GridCondition compare(GridColumn column, GridCondition.CompareOp op, Comparable<?> v1, Comparable<?> v2) {
+        return new GridCondition.Compare(column, op, v1, v2);
+    }
+
+    private static boolean isNumeric(Class<?> t) {
+        return t == Integer.class || t == Integer.TYPE || t == Long.class || t == Long.TYPE
+                || t == Float.class || t == Float.TYPE || t == Double.class || t == Double.TYPE
+                || t == BigDecimal.class;
+    }
+
+    private static Comparable<?> toColumnNumber(Class<?> t, Number n) {
+        if (n == null)
+            return null;
+        if (t == Integer.class || t == Integer.TYPE)
+            return n.intValue();
+        if (t == Long.class || t == Long.TYPE)
+            return n.longValue();
+        if (t == Float.class || t == Float.TYPE)
+            return n.floatValue();
+        if (t == Double.class || t == Double.TYPE)
+            return n.doubleValue();
+        if (t == BigDecimal.class)
+            return new BigDecimal(n.toString()); // toString -- чтобы без погрешности float получить
+        return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private static Object castForPath(Path<?> path, String value) {
-        Class<?> t = path.getJavaType();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object castForColumn(Class<?> t, String value) {
         if (t.isEnum())
             return Enum.valueOf((Class<Enum>) t, value);
         if (t.equals(Integer.class) || t.equals(Integer.TYPE))
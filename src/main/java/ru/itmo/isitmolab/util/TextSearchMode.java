@@ -0,0 +1,19 @@
+package ru.itmo.isitmolab.util;
+
+import java.util.Locale;
+
+// Как GridTablePredicateBuilder строит текстовые фильтры contains/startsWith/endsWith/equals.
+// Результат в обоих режимах один и тот же, различается только путь выполнения в PostgreSQL
+public enum TextSearchMode {
+    TRIGRAM, // lower(col) LIKE - обслуживается GIN (lower(name) gin_trgm_ops), без pg_trgm - seq scan
+    FTS;     // многословный ввод по name: + предфильтр fn_text_matches (tsvector, GIN vehicle_name_fts_idx)
+
+    public static TextSearchMode parse(String s, TextSearchMode def) {
+        if (s == null || s.isBlank()) return def;
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.itmo.isitmolab.util;
+
+import lombok.experimental.UtilityClass;
+import ru.itmo.isitmolab.dto.VehicleDto;
+import ru.itmo.isitmolab.util.filter.GridCondition;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Фильтр грида (GridTablePredicateBuilder.compile), проверяемый в памяти на VehicleDto
+// (подписки WebSocket: какие изменения строк интересны клиенту с отфильтрованным гридом).
+// Разбор filterModel и семантика условий - общие с SQL-версией и VehicleColumnStore (GridCondition.test)
+@UtilityClass
+public final class VehicleDtoPredicateBuilder {
+
+    // colId грида -> значение в VehicleDto
+    private static final Map<String, Function<VehicleDto, Object>> COLUMNS = Map.ofEntries(
+            Map.entry("id", VehicleDto::getId),
+            Map.entry("name", VehicleDto::getName),
+            Map.entry("creationTime", VehicleDto::getCreationTime),
+            Map.entry("type", VehicleDto::getType),
+            Map.entry("enginePower", VehicleDto::getEnginePower),
+            Map.entry("numberOfWheels", VehicleDto::getNumberOfWheels),
+            Map.entry("capacity", VehicleDto::getCapacity),
+            Map.entry("distanceTravelled", VehicleDto::getDistanceTravelled),
+            Map.entry("fuelConsumption", VehicleDto::getFuelConsumption),
+            Map.entry("fuelType", VehicleDto::getFuelType),
+            Map.entry("coordinates.id", VehicleDto::getCoordinatesId),
+            Map.entry("coordinates.x", VehicleDto::getCoordinatesX),
+            Map.entry("coordinates.y", VehicleDto::getCoordinatesY)
+    );
+
+    // Условия объединяются через AND. IllegalArgumentException - колонки нет в VehicleDto
+    public static Predicate<VehicleDto> build(GridFilter filter) {
+        if (filter == null || filter.isEmpty())
+            return dto -> true;
+
+        List<Predicate<VehicleDto>> out = new ArrayList<>();
+        for (GridCondition c : filter.getConditions()) {
+            Function<VehicleDto, Object> getter = COLUMNS.get(c.column().getColId());
+            if (getter == null)
+                throw new IllegalArgumentException("Column " + c.column().getColId() + " is not available in VehicleDto");
+            out.add(dto -> c.test(getter.apply(dto)));
+        }
+        return dto -> {
+            for (Predicate<VehicleDto> p : out)
+                if (!p.test(dto)) return false;
+            return true;
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package ru.itmo.isitmolab.util;
+
+import java.util.Locale;
+
+// Формат выгрузки GET/POST /vehicle/export и файла /vehicle/import (VehicleImportReader) - выгрузка
+// загружается обратно как есть. Поля записи - как у VehicleImportItemDto
+public enum VehicleExportFormat {
+    JSON("application/json", "json"),       // JSON-массив
+    NDJSON("application/x-ndjson", "ndjson"), // объект на строку - для jq/потоковых загрузчиков
+    CSV("text/csv", "csv");                  // заголовок + строки, coordinates.x/y - отдельными колонками
+
+    private final String mediaType;
+    private final String extension;
+
+    VehicleExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // по Content-Type файла импорта; прочие типы (application/json, octet-stream, не указан) - def
+    public static VehicleExportFormat fromMediaType(String contentType, VehicleExportFormat def) {
+        if (contentType == null) return def;
+        String type = contentType.split(";", 2)[0].trim();
+        for (VehicleExportFormat f : values()) {
+            if (f.mediaType.equalsIgnoreCase(type)) return f;
+        }
+        return def;
+    }
+
+    // null - неизвестный формат
+    public static VehicleExportFormat parse(String s, VehicleExportFormat def) {
+        if (s == null || s.isBlank()) return def;
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.itmo.isitmolab.util;
+
+import jakarta.json.Json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Потоковая запись выгрузки: строка выборки сразу уходит в буфер ответа, в памяти - только буфер.
+// Строка - значения в порядке COLUMNS (как отдаёт VehicleDao.streamExportRows), NULL пишется как null/пустое поле
+public class VehicleExportWriter implements Closeable {
+
+    // имена полей VehicleImportItemDto; coordinates.x/y в JSON - вложенный объект coordinates
+    public static final String[] COLUMNS = {
+            "name", "type", "enginePower", "numberOfWheels", "capacity",
+            "distanceTravelled", "fuelConsumption", "fuelType", "coordinates.x", "coordinates.y"
+    };
+    private static final int X = 8;
+    private static final int Y = 9;
+
+    private final Writer out;
+    private final VehicleExportFormat format;
+    private long rows;
+
+    public VehicleExportWriter(OutputStream out, VehicleExportFormat format) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 1 << 16);
+        this.format = format;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void begin() throws IOException {
+        switch (format) {
+            case JSON -> out.write('[');
+            case CSV -> {
+                out.write(String.join(",", COLUMNS));
+                out.write('\n');
+            }
+            case NDJSON -> {
+            }
+        }
+    }
+
+    public void row(Object[] r) throws IOException {
+        switch (format) {
+            case JSON -> {
+                if (rows > 0) out.write(',');
+                out.write('\n');
+                object(r);
+            }
+            case NDJSON -> {
+                object(r);
+                out.write('\n');
+            }
+            case CSV -> csv(r);
+        }
+        rows++;
+    }
+
+    public void end() throws IOException {
+        if (format == VehicleExportFormat.JSON) out.write(rows > 0 ? "\n]\n" : "]\n");
+        out.flush();
+    }
+
+    // close не закрывает поток ответа - им управляет контейнер
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void object(Object[] r) throws IOException {
+        out.write('{');
+        for (int i = 0; i < X; i++) {
+            if (i > 0) out.write(',');
+            jsonString(COLUMNS[i]);
+            out.write(':');
+            json(r[i]);
+        }
+        out.write(",\"coordinates\":{\"x\":");
+        json(r[X]);
+        out.write(",\"y\":");
+        json(r[Y]);
+        out.write("}}");
+    }
+
+    private void json(Object v) throws IOException {
+        if (v == null) out.write("null");
+        else if (v instanceof Number n) out.write(n.toString()); // Float/Double.toString обратимо парсится
+        else jsonString(v instanceof Enum<?> e ? e.name() : v.toString());
+    }
+
+    private void jsonString(String s) throws IOException {
+        out.write(Json.createValue(s).toString()); // кавычки + экранирование по RFC 8259
+    }
+
+    // RFC 4180: текст всегда в кавычках (внутренние кавычки удваиваются), NULL - пустое поле
+    private void csv(Object[] r) throws IOException {
+        for (int i = 0; i < r.length; i++) {
+            if (i > 0) out.write(',');
+            Object v = r[i];
+            if (v == null) continue;
+            if (v instanceof Number n) {
+                out.write(n.toString());
+            } else {
+                String s = v instanceof Enum<?> e ? e.name() : v.toString();
+                out.write('"');
+                out.write(s.replace("\"", "\"\""));
+                out.write('"');
+            }
+        }
+        out.write('\n');
+    }
+}
@@ -0,0 +1,176 @@
+package ru.itmo.isitmolab.util;
+
+import jakarta.ws.rs.BadRequestException;
+import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Потоковое чтение CSV импорта в формате /vehicle/export?format=csv (RFC 4180): первая строка - заголовок
+// с колонками VehicleExportWriter.COLUMNS в любом порядке, дальше запись на строку.
+// Пустое поле без кавычек - NULL, "" - пустая строка; текст в кавычках может содержать запятые и переводы строк
+public class VehicleImportCsvReader implements VehicleImportReader {
+
+    private static final String[] COLUMNS = VehicleExportWriter.COLUMNS;
+
+    private final PushbackReader in;
+    private final int[] index; // колонка COLUMNS -> номер поля в записи файла
+    private final int width; // полей в заголовке
+    private boolean finished;
+    private int rowNumber; // номер последней прочитанной записи без заголовка (с 1)
+
+    public VehicleImportCsvReader(InputStream in) {
+        if (in == null) {
+            throw new BadRequestException("Не передан файл для импорта");
+        }
+        this.in = new PushbackReader(new BufferedReader(new InputStreamReader(in, UTF_8), 1 << 16));
+
+        List<String> header = record();
+        if (header == null) {
+            throw new BadRequestException("Файл пустой");
+        }
+        if (header.get(0) != null && header.get(0).startsWith("\uFEFF")) {
+            header.set(0, header.get(0).substring(1)); // BOM, который дописывают табличные редакторы
+        }
+        width = header.size();
+        index = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            index[i] = header.indexOf(COLUMNS[i]);
+            if (index[i] < 0) {
+                throw new BadRequestException("В заголовке CSV нет колонки " + COLUMNS[i]);
+            }
+        }
+    }
+
+    @Override
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    // следующие до size записей; пустой список - файл закончился. Пустые строки пропускаются
+    @Override
+    public List<VehicleImportItemDto> nextChunk(int size) {
+        List<VehicleImportItemDto> out = new ArrayList<>(size);
+        while (!finished && out.size() < size) {
+            List<String> fields = record();
+            if (fields == null) {
+                finished = true;
+            } else if (fields.size() != 1 || fields.get(0) != null) {
+                rowNumber++;
+                if (fields.size() != width) {
+                    throw new BadRequestException("Запись " + rowNumber + ": ожидается " + width
+                            + " полей, получено " + fields.size());
+                }
+                out.add(toItem(fields));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private VehicleImportItemDto toItem(List<String> f) {
+        VehicleImportItemDto item = new VehicleImportItemDto();
+        item.setName(field(f, 0));
+        item.setType(field(f, 1));
+        item.setEnginePower(integer(f, 2));
+        item.setNumberOfWheels(integer(f, 3));
+        item.setCapacity(integer(f, 4));
+        item.setDistanceTravelled(integer(f, 5));
+        Double fuel = number(f, 6);
+        item.setFuelConsumption(fuel != null ? fuel.floatValue() : null);
+        item.setFuelType(field(f, 7));
+        // как у JSON-выгрузки: объект coordinates есть всегда, x/y могут быть NULL (их отклонит валидация)
+        Double y = number(f, 9);
+        item.setCoordinates(new VehicleImportItemDto.CoordinatesNestedDto(number(f, 8), y != null ? y.floatValue() : null));
+        return item;
+    }
+
+    private String field(List<String> f, int column) {
+        return f.get(index[column]);
+    }
+
+    private Integer integer(List<String> f, int column) {
+        String s = field(f, column);
+        if (s == null) return null;
+        try {
+            return Integer.valueOf(s.trim());
+        } catch (NumberFormatException e) {
+            throw typeError(column);
+        }
+    }
+
+    private Double number(List<String> f, int column) {
+        String s = field(f, column);
+        if (s == null) return null;
+        try {
+            return Double.valueOf(s.trim());
+        } catch (NumberFormatException e) {
+            throw typeError(column);
+        }
+    }
+
+    private BadRequestException typeError(int column) {
+        return new BadRequestException("Запись " + rowNumber + ": поле " + COLUMNS[column] + " имеет неверный тип");
+    }
+
+    // Одна запись RFC 4180 (конец строки - \n или \r\n); null - конец файла
+    private List<String> record() {
+        try {
+            int c = in.read();
+            if (c == -1) return null;
+            List<String> fields = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (c == '"' && !quoted && sb.length() == 0) {
+                    quoted = true;
+                    while (true) {
+                        c = in.read();
+                        if (c == -1) throw new BadRequestException("Запись " + (rowNumber + 1) + ": незакрытые кавычки");
+                        if (c == '"') {
+                            c = in.read();
+                            if (c != '"') break; // закрывающая кавычка, c - символ после неё
+                        }
+                        sb.append((char) c);
+                    }
+                    continue;
+                }
+                if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                    fields.add(quoted || sb.length() > 0 ? sb.toString() : null);
+                    sb.setLength(0);
+                    quoted = false;
+                    if (c == ',') {
+                        c = in.read();
+                        continue;
+                    }
+                    if (c == '\r') {
+                        int next = in.read();
+                        if (next != '\n' && next != -1) in.unread(next);
+                    }
+                    return fields;
+                }
+                if (quoted) {
+                    throw new BadRequestException("Запись " + (rowNumber + 1) + ": после кавычки ожидается запятая");
+                }
+                sb.append((char) c);
+                c = in.read();
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Не удалось прочитать файл", e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ru.itmo.isitmolab.util;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParsingException;
+import jakarta.ws.rs.BadRequestException;
+import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Потоковое чтение JSON-массива импорта (или NDJSON - объект на строку): в памяти только текущая пачка записей
+public class VehicleImportJsonReader implements VehicleImportReader {
+
+    private final JsonParser parser; // JSON-массив
+    private final BufferedReader lines; // NDJSON
+    private boolean finished;
+    private int rowNumber; // номер последней прочитанной записи (с 1)
+
+    public VehicleImportJsonReader(InputStream in) {
+        this(in, false);
+    }
+
+    public VehicleImportJsonReader(InputStream in, boolean ndjson) {
+        if (in == null) {
+            throw new BadRequestException("Не передан файл для импорта");
+        }
+        if (ndjson) {
+            this.parser = null;
+            this.lines = new BufferedReader(new InputStreamReader(in, UTF_8), 1 << 16);
+            return;
+        }
+        this.lines = null;
+        this.parser = Json.createParser(in);
+        try {
+            if (!parser.hasNext()) {
+                throw new BadRequestException("Файл пустой");
+            }
+            if (parser.next() != JsonParser.Event.START_ARRAY) {
+                throw new BadRequestException("Файл не является корректным JSON-массивом");
+            }
+        } catch (JsonException e) {
+            throw new BadRequestException("Файл не является корректным JSON-массивом", e);
+        }
+    }
+
+    @Override
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    // следующие до size записей; пустой список - массив закончился
+    @Override
+    public List<VehicleImportItemDto> nextChunk(int size) {
+        if (lines != null) return nextLines(size);
+        List<VehicleImportItemDto> out = new ArrayList<>(size);
+        try {
+            while (!finished && out.size() < size) {
+                if (!parser.hasNext()) {
+                    throw new BadRequestException("Файл не является корректным JSON-массивом");
+                }
+                JsonParser.Event ev = parser.next();
+                switch (ev) {
+                    case END_ARRAY -> finished = true;
+                    case START_OBJECT -> {
+                        rowNumber++;
+                        out.add(toItem(parser.getObject()));
+                    }
+                    case VALUE_NULL -> throw new BadRequestException("Файл содержит пустые записи");
+                    default -> throw new BadRequestException(
+                            "Запись " + (rowNumber + 1) + ": ожидается JSON-объект");
+                }
+            }
+        } catch (JsonParsingException e) {
+            throw new BadRequestException("Файл не является корректным JSON-массивом", e);
+        } catch (JsonException e) {
+            throw new BadRequestException("Не удалось прочитать файл", e);
+        }
+        return out;
+    }
+
+    // NDJSON: пустые строки (в том числе перевод строки в конце файла) пропускаются
+    private List<VehicleImportItemDto> nextLines(int size) {
+        List<VehicleImportItemDto> out = new ArrayList<>(size);
+        try {
+            while (!finished && out.size() < size) {
+                String line = lines.readLine();
+                if (line == null) {
+                    finished = true;
+                } else if (!line.isBlank()) {
+                    rowNumber++;
+                    JsonValue v;
+                    try (JsonReader r = Json.createReader(new StringReader(line))) {
+                        v = r.readValue();
+                    } catch (JsonException e) {
+                        throw new BadRequestException("Запись " + rowNumber + ": строка не является корректным JSON", e);
+                    }
+                    if (v.getValueType() == JsonValue.ValueType.NULL) {
+                        throw new BadRequestException("Файл содержит пустые записи");
+                    }
+                    if (v.getValueType() != JsonValue.ValueType.OBJECT) {
+                        throw new BadRequestException("Запись " + rowNumber + ": ожидается JSON-объект");
+                    }
+                    out.add(toItem(v.asJsonObject()));
+                }
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Не удалось прочитать файл", e);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        if (parser != null) {
+            parser.close();
+            return;
+        }
+        try {
+            lines.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private VehicleImportItemDto toItem(JsonObject o) {
+        VehicleImportItemDto item = new VehicleImportItemDto();
+        item.setName(str(o, "name"));
+        item.setType(str(o, "type"));
+        item.setEnginePower(integer(o, "enginePower"));
+        item.setNumberOfWheels(integer(o, "numberOfWheels"));
+        item.setCapacity(integer(o, "capacity"));
+        item.setDistanceTravelled(integer(o, "distanceTravelled"));
+        Double fuel = number(o, "fuelConsumption");
+        item.setFuelConsumption(fuel != null ? fuel.floatValue() : null);
+        item.setFuelType(str(o, "fuelType"));
+
+        JsonValue c = o.get("coordinates");
+        if (c != null && c.getValueType() == JsonValue.ValueType.OBJECT) {
+            JsonObject co = c.asJsonObject();
+            Double y = number(co, "y");
+            item.setCoordinates(new VehicleImportItemDto.CoordinatesNestedDto(
+                    number(co, "x"), y != null ? y.floatValue() : null));
+        } else if (c != null && c.getValueType() != JsonValue.ValueType.NULL) {
+            throw typeError("coordinates");
+        }
+        return item;
+    }
+
+    private String str(JsonObject o, String field) {
+        JsonValue v = o.get(field);
+        if (v == null || v.getValueType() == JsonValue.ValueType.NULL) return null;
+        if (v instanceof JsonString s) return s.getString();
+        throw typeError(field);
+    }
+
+    private Integer integer(JsonObject o, String field) {
+        JsonValue v = o.get(field);
+        if (v == null || v.getValueType() == JsonValue.ValueType.NULL) return null;
+        if (v instanceof JsonNumber n && n.isIntegral()) {
+            try {
+                return n.intValueExact();
+            } catch (ArithmeticException ignored) {
+            }
+        }
+        throw typeError(field);
+    }
+
+    private Double number(JsonObject o, String field) {
+        JsonValue v = o.get(field);
+        if (v == null || v.getValueType() == JsonValue.ValueType.NULL) return null;
+        if (v instanceof JsonNumber n) return n.doubleValue();
+        throw typeError(field);
+    }
+
+    private BadRequestException typeError(String field) {
+        return new BadRequestException("Запись " + rowNumber + ": поле " + field + " имеет неверный тип");
+    }
+}
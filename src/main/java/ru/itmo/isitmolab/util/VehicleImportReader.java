@@ -0,0 +1,29 @@
+package ru.itmo.isitmolab.util;
+
+import ru.itmo.isitmolab.dto.VehicleImportItemDto;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+
+// Пачечное чтение файла импорта: в памяти только текущая пачка записей, а не весь файл.
+// Форматы - те же, что отдаёт /vehicle/export, поэтому выгрузка загружается обратно как есть
+public interface VehicleImportReader extends Closeable {
+
+    // следующие до size записей; пустой список - файл закончился
+    List<VehicleImportItemDto> nextChunk(int size);
+
+    // номер последней прочитанной записи (с 1)
+    int getRowNumber();
+
+    @Override
+    void close();
+
+    static VehicleImportReader open(InputStream in, VehicleExportFormat format) {
+        return switch (format) {
+            case JSON -> new VehicleImportJsonReader(in);
+            case NDJSON -> new VehicleImportJsonReader(in, true);
+            case CSV -> new VehicleImportCsvReader(in);
+        };
+    }
+}
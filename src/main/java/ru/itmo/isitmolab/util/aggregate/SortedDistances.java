@@ -0,0 +1,63 @@
+package ru.itmo.isitmolab.util.aggregate;
+
+import java.util.Arrays;
+
+// Пары (distance, id), отсортированные по distance, затем по id: минимум - первый элемент.
+// Два параллельных примитивных массива вместо TreeSet объектов. Не потокобезопасен - синхронизирует владелец
+final class SortedDistances {
+
+    private int[] distances;
+    private long[] ids;
+    private int size;
+
+    SortedDistances(int capacity) {
+        distances = new int[Math.max(16, capacity)];
+        ids = new long[distances.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(int distance, long id) {
+        if (size == distances.length) {
+            int cap = size + (size >> 1) + 1;
+            distances = Arrays.copyOf(distances, cap);
+            ids = Arrays.copyOf(ids, cap);
+        }
+        int i = lowerBound(distance, id);
+        System.arraycopy(distances, i, distances, i + 1, size - i);
+        System.arraycopy(ids, i, ids, i + 1, size - i);
+        distances[i] = distance;
+        ids[i] = id;
+        size++;
+    }
+
+    boolean remove(int distance, long id) {
+        int i = lowerBound(distance, id);
+        if (i == size || distances[i] != distance || ids[i] != id) return false;
+        System.arraycopy(distances, i + 1, distances, i, size - i - 1);
+        System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    // id ТС с минимальным distance (при равенстве - с меньшим id); -1 - пусто
+    long minId() {
+        return size == 0 ? -1 : ids[0];
+    }
+
+    private int lowerBound(int distance, long id) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = distances[mid] != distance
+                    ? Integer.compare(distances[mid], distance)
+                    : Long.compare(ids[mid], id);
+            if (c < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
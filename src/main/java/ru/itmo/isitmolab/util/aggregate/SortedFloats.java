@@ -0,0 +1,62 @@
+package ru.itmo.isitmolab.util.aggregate;
+
+import java.util.Arrays;
+
+// Отсортированный мультисет float на примитивном массиве: countGreaterThan за O(log n) бинпоиском,
+// вставка/удаление - сдвиг хвоста (System.arraycopy). Записи редки по сравнению с чтениями,
+// поэтому сдвиг дешевле поддержки дерева на объектах. Не потокобезопасен - синхронизирует владелец
+final class SortedFloats {
+
+    private float[] values;
+    private int size;
+
+    SortedFloats(int capacity) {
+        values = new float[Math.max(16, capacity)];
+    }
+
+    // из неотсортированного снимка: одна сортировка вместо n вставок
+    static SortedFloats of(float[] data, int n) {
+        SortedFloats s = new SortedFloats(n + n / 4);
+        System.arraycopy(data, 0, s.values, 0, n);
+        Arrays.sort(s.values, 0, n);
+        s.size = n;
+        return s;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(float v) {
+        if (size == values.length) values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        int i = upperBound(v);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = v;
+        size++;
+    }
+
+    boolean remove(float v) {
+        int i = upperBound(v) - 1;
+        if (i < 0 || Float.compare(values[i], v) != 0) return false;
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    // число значений строго больше v (как fuel_consumption > p_value)
+    int countGreaterThan(float v) {
+        return size - upperBound(v);
+    }
+
+    // первый индекс со значением > v
+    private int upperBound(float v) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Float.compare(values[mid], v) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.itmo.isitmolab.util.aggregate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import ru.itmo.isitmolab.dao.VehicleSpecialDao;
+import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.util.snapshot.BackgroundSnapshot;
+import ru.itmo.isitmolab.util.tx.AfterCommit;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Агрегаты по vehicle для спец-операций в памяти: fuel_consumption > v (SortedFloats) и ТС с минимальным
+// distance_travelled (SortedDistances) отвечают за O(log n) без SQL. Снимок строится в фоне (старт, COPY-импорт),
+// дальше поддерживается изменениями из VehicleService/импорта, применёнными после коммита; изменения,
+// закоммиченные во время скана, накатываются на новый снимок.
+// Пока снимка нет (старт, COPY-импорт, ошибка) - ответ даёт переданный SQL-fallback
+@ApplicationScoped
+public class VehicleAggregates {
+
+    private static final Object TX_CHANGES_KEY = new Object();
+
+    // JAVA_OPTS="-Dvehicle.aggregates.enabled=false" - всегда считать хранимыми функциями
+    private final boolean enabled =
+            Boolean.parseBoolean(System.getProperty("vehicle.aggregates.enabled", "true"));
+
+    private BackgroundSnapshot<Indexes> snapshot;
+
+    private final AtomicLong memoryAnswers = new AtomicLong();
+    private final AtomicLong sqlFallbacks = new AtomicLong();
+
+    @Inject
+    VehicleSpecialDao specialDao;
+
+    @Inject
+    VehicleAggregates self;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        snapshot = new BackgroundSnapshot<>("Vehicle aggregates", new Indexes(new HashMap<>(), new SortedFloats(0),
+                new SortedDistances(0)), executor, () -> self.rebuild());
+    }
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (!enabled) return;
+        snapshot.requestRebuild();
+    }
+
+    public long countFuelGreaterThan(float v, LongSupplier fallback) {
+        if (enabled) {
+            Optional<Integer> n = snapshot.read(ix -> ix.fuel.countGreaterThan(v));
+            if (n.isPresent()) {
+                memoryAnswers.incrementAndGet();
+                return n.get();
+            }
+        }
+        sqlFallbacks.incrementAndGet();
+        return fallback.getAsLong();
+    }
+
+    public Optional<Long> minDistanceId(Supplier<Optional<Long>> fallback) {
+        if (enabled) {
+            Optional<Long> id = snapshot.read(ix -> ix.distance.minId());
+            if (id.isPresent()) {
+                memoryAnswers.incrementAndGet();
+                return id.get() < 0 ? Optional.empty() : id;
+            }
+        }
+        sqlFallbacks.incrementAndGet();
+        return fallback.get();
+    }
+
+    void onVehicleChanged(@Observes VehicleChanged e) {
+        if (e.type() == VehicleChanged.Type.DELETED) vehicleDeleted(e.id());
+        else vehicleSaved(e.vehicle());
+    }
+
+    // Вызывается после persist/изменения сущности: значения снимаются сейчас, применяются после коммита
+    public void vehicleSaved(Vehicle v) {
+        if (!enabled || v.getId() == null) return;
+        Row row = new Row(v.getFuelConsumption(), v.getDistanceTravelled());
+        Long id = v.getId();
+        enlist(ix -> ix.put(id, row));
+    }
+
+    public void vehicleDeleted(Long id) {
+        if (!enabled || id == null) return;
+        enlist(ix -> ix.remove(id));
+    }
+
+    // Изменения мимо сущностей (COPY-импорт): после коммита индексы перестраиваются в фоне
+    public void invalidate() {
+        if (!enabled) return;
+        afterCommit.run(snapshot::invalidate);
+    }
+
+    // Снимок таблицы одним запросом в порядке distance_travelled, id: индекс расстояний заполняется
+    // дописыванием в конец, fuel сортируется один раз. Транзакция нужна, чтобы драйвер читал курсором.
+    // Обычно вызывается в фоне (BackgroundSnapshot), вручную - из /vehicle/special/aggregates/rebuild
+    @Transactional
+    public void rebuild() {
+        if (!enabled) return;
+        snapshot.rebuild(() -> {
+            Map<Long, Row> rows = new HashMap<>();
+            float[] fuels = new float[1024];
+            SortedDistances distances = new SortedDistances(1024);
+            int n = 0;
+            try (Stream<Object[]> s = specialDao.streamAggregateRows()) {
+                for (Object[] r : (Iterable<Object[]>) s::iterator) {
+                    long id = ((Number) r[0]).longValue();
+                    Row row = new Row(((Number) r[1]).floatValue(), r[2] == null ? null : ((Number) r[2]).intValue());
+                    rows.put(id, row);
+                    if (n == fuels.length) fuels = Arrays.copyOf(fuels, n * 2);
+                    fuels[n++] = row.fuel();
+                    if (row.distance() != null) distances.add(row.distance(), id);
+                }
+            }
+            return new Indexes(rows, SortedFloats.of(fuels, n), distances);
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("rows", snapshot.peek(ix -> ix.rows.size()));
+        out.put("withDistance", snapshot.peek(ix -> ix.distance.size()));
+        snapshot.stats(out);
+        out.put("memoryAnswers", memoryAnswers.get());
+        out.put("sqlFallbacks", sqlFallbacks.get());
+        return out;
+    }
+
+    // изменения текущей транзакции (импорт - тысячи строк на пачку) применяются одной пачкой после коммита
+    private void enlist(Consumer<Indexes> change) {
+        afterCommit.enlist(TX_CHANGES_KEY, change, snapshot::apply);
+    }
+
+    private record Row(float fuel, Integer distance) {
+    }
+
+    // id -> значения, по которым строка лежит в индексах (нужны для удаления/замены)
+    private record Indexes(Map<Long, Row> rows, SortedFloats fuel, SortedDistances distance) {
+
+        void put(Long id, Row row) {
+            Row old = rows.put(id, row);
+            if (old != null) unindex(id, old);
+            fuel.add(row.fuel());
+            if (row.distance() != null) distance.add(row.distance(), id);
+        }
+
+        void remove(Long id) {
+            Row old = rows.remove(id);
+            if (old != null) unindex(id, old);
+        }
+
+        private void unindex(Long id, Row old) {
+            fuel.remove(old.fuel());
+            if (old.distance() != null) distance.remove(old.distance(), id);
+        }
+    }
+}
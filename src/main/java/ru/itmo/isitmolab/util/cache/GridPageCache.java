@@ -0,0 +1,179 @@
+package ru.itmo.isitmolab.util.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.AllArgsConstructor;
+import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.tx.AfterCommit;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Cache-aside кеш готовых страниц грида (строки + итог). Ключ - таблица + окно/курсор + сортировка + GridFilter.key(),
+// актуальность - версии таблиц, от которых страница зависит: запись в таблицу поднимает её версию,
+// и все страницы, посчитанные по старой версии, перестают находиться
+@ApplicationScoped
+public class GridPageCache {
+
+    public static final String VEHICLE = "vehicle";
+    public static final String COORDINATES = "coordinates";
+    // и строки ТС (coordinates.x/y), и строки координат (число ТС) зависят от обеих таблиц
+    public static final String[] GRID_TABLES = {VEHICLE, COORDINATES};
+
+    // JAVA_OPTS="-Dgrid.page.cache.enabled=false -Dgrid.page.cache.ttl.ms=30000 -Dgrid.page.cache.max=500"
+    private volatile boolean enabled =
+            Boolean.parseBoolean(System.getProperty("grid.page.cache.enabled", "true"));
+    private final long ttlMillis = Long.getLong("grid.page.cache.ttl.ms", 30_000L); // на случай записей мимо приложения
+    private final int maxEntries = Integer.getInteger("grid.page.cache.max", 500);
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    // LRU по доступу, вытеснение самой старой страницы при превышении maxEntries
+    private final LinkedHashMap<String, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Inject
+    AfterCommit afterCommit;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        clear();
+    }
+
+    // filter - разобранный req.filterModel; tables - все таблицы, из которых собирается страница
+    // (у ТС в строке есть coordinates.x/y)
+    @SuppressWarnings("unchecked")
+    public <T> T get(String table, GridTableRequest req, GridFilter filter, String[] tables, Supplier<T> loader) {
+        if (!enabled) return loader.get();
+
+        String key = key(table, req, filter);
+        long[] v = currentVersions(tables);
+        long now = System.currentTimeMillis();
+
+        CachedPage c;
+        synchronized (pages) {
+            c = pages.get(key);
+        }
+        if (c != null && Arrays.equals(c.versions, v) && now - c.createdAt < ttlMillis) {
+            hits.incrementAndGet();
+            return (T) c.value;
+        }
+
+        misses.incrementAndGet();
+        T value = loader.get();
+        // пока страница считалась, могла пройти запись - такую страницу не кешируем
+        if (Arrays.equals(v, currentVersions(tables))) {
+            synchronized (pages) {
+                pages.put(key, new CachedPage(value, v, now));
+            }
+            puts.incrementAndGet();
+        }
+        return value;
+    }
+
+    // Вызывается на путях записи вместе с GridCountService.invalidate(): версия поднимается сразу
+    // и повторно после завершения транзакции, чтобы не закешировать страницу, прочитанную до коммита
+    public void invalidate(String... tables) {
+        bump(tables);
+        afterCommit.afterCompletion(() -> bump(tables));
+    }
+
+    void onVehicleChanged(@Observes VehicleChanged e) {
+        invalidate(VEHICLE);
+    }
+
+    public void clear() {
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        synchronized (pages) {
+            out.put("size", pages.size());
+        }
+        out.put("maxEntries", maxEntries);
+        out.put("ttlMillis", ttlMillis);
+        out.put("hitCount", h);
+        out.put("missCount", m);
+        out.put("putCount", puts.get());
+        out.put("evictionCount", evictions.get());
+        out.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        Map<String, Long> v = new LinkedHashMap<>();
+        versions.forEach((t, ver) -> v.put(t, ver.get()));
+        out.put("tableVersions", v);
+        return out;
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        puts.set(0);
+        evictions.set(0);
+    }
+
+    private void bump(String... tables) {
+        for (String t : tables) {
+            versions.computeIfAbsent(t, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private long[] currentVersions(String[] tables) {
+        long[] v = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            AtomicLong ver = versions.get(tables[i]);
+            v[i] = ver == null ? 0 : ver.get();
+        }
+        return v;
+    }
+
+    // startRow/endRow/курсор + sortModel + ключ разобранного фильтра (порядок колонок и 100 vs 100.0 не важны)
+    static String key(String table, GridTableRequest req, GridFilter filter) {
+        StringBuilder sb = new StringBuilder(table).append(':')
+                .append(req.startRow).append('-').append(req.endRow);
+        if (req.isKeysetMode()) sb.append(":k:").append(req.cursor);
+        sb.append(":s:");
+        if (req.sortModel != null) {
+            req.sortModel.forEach(s -> {
+                if (s != null) sb.append(s.getColId()).append('.').append(s.getSort()).append(',');
+            });
+        }
+        sb.append(":f:").append(filter.key());
+        return sb.toString();
+    }
+
+    @AllArgsConstructor
+    private static final class CachedPage {
+        final Object value;
+        final long[] versions;
+        final long createdAt;
+    }
+}
@@ -0,0 +1,325 @@
+package ru.itmo.isitmolab.util.columnar;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Locale;
+
+// Колонка VehicleColumnStore: значения строк в примитивном массиве, NULL - отдельным битсетом.
+// Сравнения (SortableColumn) есть только у типов, где порядок совпадает с PostgreSQL без collation
+// (числа, время, enum), текстовые фильтры (TextColumn) - у строк и enum
+abstract class Column {
+
+    final Class<?> type; // java-тип значения (для курсора и проверки типов фильтра)
+    final BitSet nulls = new BitSet();
+
+    Column(Class<?> type) {
+        this.type = type;
+    }
+
+    abstract void grow(int capacity);
+
+    abstract void setValue(int row, Object value);
+
+    public abstract Object get(int row);
+
+    final void set(int row, Object value) {
+        if (value == null) {
+            nulls.set(row);
+        } else {
+            nulls.clear(row);
+            setValue(row, value);
+        }
+    }
+
+    public final boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    static final class Ints extends Column implements SortableColumn {
+        private int[] v = new int[0];
+
+        Ints() {
+            super(Integer.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = ((Number) value).intValue();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : v[row];
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Integer.compare(v[a], v[b]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Integer.compare(v[row], ((Number) x).intValue());
+        }
+    }
+
+    static final class Longs extends Column implements SortableColumn {
+        private long[] v = new long[0];
+
+        Longs() {
+            super(Long.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = ((Number) value).longValue();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : v[row];
+        }
+
+        long getLong(int row) {
+            return v[row];
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Long.compare(v[a], v[b]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Long.compare(v[row], ((Number) x).longValue());
+        }
+    }
+
+    static final class Floats extends Column implements SortableColumn {
+        private float[] v = new float[0];
+
+        Floats() {
+            super(Float.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = ((Number) value).floatValue();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : v[row];
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Float.compare(v[a], v[b]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Float.compare(v[row], ((Number) x).floatValue());
+        }
+    }
+
+    static final class Doubles extends Column implements SortableColumn {
+        private double[] v = new double[0];
+
+        Doubles() {
+            super(Double.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = ((Number) value).doubleValue();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : v[row];
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Double.compare(v[a], v[b]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Double.compare(v[row], ((Number) x).doubleValue());
+        }
+    }
+
+    // timestamp как микросекунды от эпохи (UTC без сдвига): точность колонки timestamp в PostgreSQL
+    static final class Times extends Column implements SortableColumn {
+        private long[] v = new long[0];
+
+        Times() {
+            super(LocalDateTime.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = micros((LocalDateTime) value);
+        }
+
+        @Override
+        public Object get(int row) {
+            if (isNull(row)) return null;
+            long m = v[row];
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(m, 1_000_000L),
+                    (int) Math.floorMod(m, 1_000_000L) * 1_000, ZoneOffset.UTC);
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Long.compare(v[a], v[b]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Long.compare(v[row], micros((LocalDateTime) x));
+        }
+
+        // наносекунды округляются до микросекунд, как при записи в timestamp
+        // (LocalDateTime.now() из @PrePersist в БД хранится уже округлённым)
+        private static long micros(LocalDateTime t) {
+            return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + (t.getNano() + 500) / 1_000;
+        }
+    }
+
+    // словарное кодирование enum: код - ordinal, порядок сортировки - по имени (в БД колонка TEXT)
+    static final class Enums<E extends Enum<E>> extends Column implements SortableColumn, TextColumn {
+        private final E[] constants;
+        private final int[] rank;
+        private final String[] lower;
+        private byte[] v = new byte[0];
+
+        Enums(Class<E> enumType) {
+            super(enumType);
+            constants = enumType.getEnumConstants();
+            E[] byName = constants.clone();
+            Arrays.sort(byName, Comparator.comparing(Enum::name));
+            rank = new int[constants.length];
+            for (int i = 0; i < byName.length; i++) rank[byName[i].ordinal()] = i;
+            lower = new String[constants.length];
+            for (E e : constants) lower[e.ordinal()] = e.name().toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            v[row] = (byte) ((Enum<?>) value).ordinal();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : constants[v[row]];
+        }
+
+        @Override
+        public int compareRows(int a, int b) {
+            return Integer.compare(rank[v[a]], rank[v[b]]);
+        }
+
+        @Override
+        public int compareValue(int row, Object x) {
+            return Integer.compare(rank[v[row]], rank[((Enum<?>) x).ordinal()]);
+        }
+
+        @Override
+        public String lowerText(int row) {
+            return isNull(row) ? null : lower[v[row]];
+        }
+
+        // имена констант - ASCII
+        @Override
+        public boolean lowerMatchesDatabase(BitSet rows) {
+            return true;
+        }
+    }
+
+    // текст: хранится и исходное значение, и lower() для фильтров; сортировка - только в БД (collation).
+    // lower() в БД зависит от ctype базы, у Java - от Unicode: совпадают они только на ASCII. Строки, где
+    // не-ASCII символ в нижнем регистре даёт ASCII (İ -> i, знак Кельвина -> k), помечены - с ними ASCII-фильтр
+    // в памяти может разойтись с LIKE в БД
+    static final class Strings extends Column implements TextColumn {
+        private String[] v = new String[0];
+        private String[] lower = new String[0];
+        private final BitSet foldsToAscii = new BitSet();
+
+        Strings() {
+            super(String.class);
+        }
+
+        @Override
+        void grow(int capacity) {
+            v = Arrays.copyOf(v, capacity);
+            lower = Arrays.copyOf(lower, capacity);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            String s = (String) value;
+            v[row] = s;
+            lower[row] = s.toLowerCase(Locale.ROOT);
+            foldsToAscii.set(row, foldsToAscii(s));
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : v[row];
+        }
+
+        @Override
+        public String lowerText(int row) {
+            return isNull(row) ? null : lower[row];
+        }
+
+        @Override
+        public boolean lowerMatchesDatabase(BitSet rows) {
+            return !rows.intersects(foldsToAscii);
+        }
+
+        private static boolean foldsToAscii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c > 0x7F && Character.toLowerCase(c) <= 0x7F) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ru.itmo.isitmolab.util.columnar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Слоты живых строк снимка, отсортированные по ключам одной сортировки грида (последний ключ - id, порядок полный).
+// Строится один раз на сортировку (merge sort по int[], без упаковки в Integer) и поддерживается вставкой/удалением
+// при изменениях снимка, поэтому страница - проход по перестановке с проверкой бита фильтра, курсор - бинарный поиск.
+// Порядок NULL - как у PostgreSQL по умолчанию: NULL больше любого значения (ASC -> NULLS LAST, DESC -> NULLS FIRST)
+final class RowOrder {
+
+    private final SortableColumn[] cols;
+    private final boolean[] desc;
+    private int[] slots;
+    private int size;
+
+    RowOrder(SortableColumn[] cols, boolean[] desc, BitSet live) {
+        this.cols = cols;
+        this.desc = desc;
+        slots = new int[Math.max(16, live.cardinality())];
+        for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) slots[size++] = r;
+        sort(slots, size);
+    }
+
+    // до pageSize строк из rows, начиная с позиции from и пропустив offset подходящих
+    int[] page(BitSet rows, int from, int offset, int pageSize) {
+        int[] out = new int[pageSize];
+        int n = 0;
+        for (int i = from; i < size && n < pageSize; i++) {
+            int r = slots[i];
+            if (!rows.get(r)) continue;
+            if (offset > 0) {
+                offset--;
+                continue;
+            }
+            out[n++] = r;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    // позиция первой строки после значений курсора (то же условие, что GridTableCursor.seekPredicate)
+    int firstAfter(Object[] values) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareToValues(slots[mid], values) > 0) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // значения строки уже записаны в колонки
+    void insert(int slot) {
+        int pos = search(slot);
+        if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+        System.arraycopy(slots, pos, slots, pos + 1, size - pos);
+        slots[pos] = slot;
+        size++;
+    }
+
+    // до перезаписи значений строки: позиция ищется по тем, по которым она стоит в перестановке
+    void remove(int slot) {
+        int pos = search(slot);
+        if (pos < size && slots[pos] == slot) {
+            System.arraycopy(slots, pos + 1, slots, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    // первая позиция, где строка не раньше slot
+    private int search(int slot) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(slots[mid], slot) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // merge sort снизу вверх: прогоны по 1, 2, 4, ... через буфер той же длины
+    private void sort(int[] a, int n) {
+        int[] src = a;
+        int[] dst = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) dst[k++] = compare(src[i], src[j]) <= 0 ? src[i++] : src[j++];
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        if (src != a) System.arraycopy(src, 0, a, 0, n);
+    }
+
+    private int compare(int a, int b) {
+        for (int i = 0; i < cols.length; i++) {
+            SortableColumn c = cols[i];
+            boolean na = c.isNull(a);
+            boolean nb = c.isNull(b);
+            int x = na ? (nb ? 0 : 1) : nb ? -1 : c.compareRows(a, b);
+            if (x != 0) return desc[i] ? -x : x;
+        }
+        return 0;
+    }
+
+    // > 0 - строка идёт после значений курсора
+    private int compareToValues(int row, Object[] values) {
+        for (int i = 0; i < cols.length; i++) {
+            SortableColumn c = cols[i];
+            boolean nr = c.isNull(row);
+            boolean nv = values[i] == null;
+            int x = nr ? (nv ? 0 : 1) : nv ? -1 : c.compareValue(row, values[i]);
+            if (x != 0) return desc[i] ? -x : x;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.itmo.isitmolab.util.columnar;
+
+// Колонка, порядок значений которой совпадает с ORDER BY в PostgreSQL (числа, время, enum по имени).
+// Текст сюда не входит: его порядок зависит от collation БД, такие сортировки и сравнения идут в SQL
+interface SortableColumn {
+
+    boolean isNull(int row);
+
+    Object get(int row);
+
+    // обе строки не NULL
+    int compareRows(int a, int b);
+
+    // строка не NULL, v - не NULL и в типе колонки
+    int compareValue(int row, Object v);
+}
@@ -0,0 +1,13 @@
+package ru.itmo.isitmolab.util.columnar;
+
+import java.util.BitSet;
+
+// Колонка с текстовыми фильтрами (contains, equals, ...): строки и enum
+interface TextColumn {
+
+    // значение в нижнем регистре (как lower(col) в SQL); null - NULL в строке
+    String lowerText(int row);
+
+    // для ASCII-значения фильтра lowerText этих строк сравнивается так же, как lower(col) в БД
+    boolean lowerMatchesDatabase(BitSet rows);
+}
@@ -0,0 +1,425 @@
+package ru.itmo.isitmolab.util.columnar;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.transaction.Transactional;
+import ru.itmo.isitmolab.dao.VehicleDao;
+import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.dto.GridTableResponse;
+import ru.itmo.isitmolab.dto.GridTableSortModel;
+import ru.itmo.isitmolab.dto.VehicleDto;
+import ru.itmo.isitmolab.model.FuelType;
+import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.model.VehicleType;
+import ru.itmo.isitmolab.util.GridTableCursor;
+import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
+import ru.itmo.isitmolab.util.filter.GridCondition;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.snapshot.BackgroundSnapshot;
+import ru.itmo.isitmolab.util.tx.AfterCommit;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Колоночный снимок таблицы vehicle (+ coordinates.x/y) в памяти: каждая колонка грида - примитивный массив
+// (int[] engine_power, float[] fuel_consumption, long[] creation_time, byte-коды type/fuel_type), NULL - битсет.
+// Запрос грида (filterModel, sortModel, OFFSET или курсор) считается без SQL: фильтр - очистка битов в BitSet
+// живых строк, сортировка - закешированная на снимок перестановка слотов (RowOrder), страница - проход по ней
+// с проверкой битов фильтра (курсор - бинарный поиск), итог - число оставшихся битов (точный).
+// Снимок строится в фоне (старт, включение, COPY-импорт), дальше поддерживается изменениями из сервисов,
+// применёнными после коммита; изменения, закоммиченные во время скана, накатываются на новый снимок.
+// Что не повторить в точности как в БД (сортировка по тексту - collation, текстовый фильтр не в ASCII - ctype,
+// неизвестные колонки), и пока снимка нет - Optional.empty(), запрос идёт в VehicleDao
+@ApplicationScoped
+public class VehicleColumnStore {
+
+    private static final Object TX_CHANGES_KEY = new Object();
+
+    // порядок колонок = порядок значений в строке VehicleDao.streamColumnarRows() и row(VehicleDto)
+    private static final String[] COLUMN_IDS = {
+            "id", "name", "creationTime", "type", "enginePower", "numberOfWheels", "capacity",
+            "distanceTravelled", "fuelConsumption", "fuelType", "coordinates.id", "coordinates.x", "coordinates.y"
+    };
+    private static final int ID = 0;
+    private static final int COORDINATES_ID = 10;
+    private static final int COORDINATES_X = 11;
+    private static final int COORDINATES_Y = 12;
+
+    // JAVA_OPTS="-Dgrid.columnar.enabled=true" (по умолчанию выключено: снимок держит всю таблицу в heap)
+    private volatile boolean enabled = Boolean.getBoolean("grid.columnar.enabled");
+
+    // перестановок (по одной на сортировку) на снимок, каждая - int на строку; сверх - кеш сбрасывается
+    private static final int MAX_ORDERS = 8;
+    // столько изменений перестановки поддерживают вставкой/удалением (O(n) сдвиг на каждое),
+    // после большего числа (пачка импорта) дешевле построить их заново при следующем чтении
+    private static final int MAX_ORDER_EDITS = 32;
+
+    private BackgroundSnapshot<Table> snapshot;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private volatile String lastFallback;
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
+    @Inject
+    VehicleDao dao;
+
+    @Inject
+    VehicleColumnStore self;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        snapshot = new BackgroundSnapshot<>("Vehicle column store", new Table(0), executor, () -> self.rebuild());
+    }
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (!enabled) return;
+        snapshot.requestRebuild();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // выключение сразу отпускает снимок, включение строит его при следующем запросе
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        snapshot.reset(new Table(0));
+    }
+
+    // Страница грида из снимка; empty - запрос не поддерживается или снимка нет, читать из БД
+    public Optional<GridTableResponse<VehicleDto>> query(GridTableRequest req) {
+        if (!enabled) return Optional.empty();
+
+        GridFilter filter;
+        try {
+            filter = req.getCompiledFilter();
+            if (filter == null || !filter.isFor(Vehicle.class, req.filterModel)) {
+                filter = GridTablePredicateBuilder.compile(emf.getMetamodel().entity(Vehicle.class), req.filterModel);
+                req.setCompiledFilter(filter);
+            }
+        } catch (IllegalArgumentException e) {
+            return fallback("filter: " + e.getMessage()); // неизвестная колонка - пусть ответит DAO как обычно
+        }
+        List<GridTableSortModel> keys = GridTableCursor.effectiveSort(req.sortModel, VehicleDao.DEFAULT_SORT);
+        GridFilter f = filter;
+        // пока снимок строится в фоне - страницу читает DAO
+        return snapshot.read(t -> query(t, req, f, keys)).orElseGet(() -> fallback("not ready"));
+    }
+
+    // под read-lock снимка
+    private Optional<GridTableResponse<VehicleDto>> query(Table t, GridTableRequest req, GridFilter filter,
+                                                          List<GridTableSortModel> keys) {
+        SortableColumn[] sortColumns = new SortableColumn[keys.size()];
+        boolean[] desc = new boolean[keys.size()];
+        List<Class<?>> sortTypes = new ArrayList<>(keys.size());
+        StringBuilder orderKey = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            Column c = t.column(keys.get(i).getColId());
+            if (!(c instanceof SortableColumn sc)) return fallback("sort: " + keys.get(i).getColId());
+            sortColumns[i] = sc;
+            desc[i] = GridTableCursor.isDesc(keys.get(i));
+            sortTypes.add(c.type);
+            orderKey.append(keys.get(i).getColId()).append(desc[i] ? ":d," : ":a,");
+        }
+
+        BitSet rows = (BitSet) t.live.clone();
+        for (GridCondition c : filter.getConditions()) {
+            Column col = t.column(c.column().getColId());
+            if (col == null || !retain(rows, c, col)) return fallback("filter: " + c.column().getColId());
+        }
+        int total = rows.cardinality();
+
+        final int pageSize = Math.max(1, req.endRow - req.startRow);
+        final boolean keyset = req.isKeysetMode();
+        final int offset = keyset ? 0 : Math.max(0, req.startRow);
+        RowOrder order = t.order(orderKey.toString(), sortColumns, desc);
+        int from = 0;
+        if (keyset && req.cursor != null && !req.cursor.isBlank()) {
+            from = order.firstAfter(GridTableCursor.decodeTyped(req.cursor, keys, sortTypes));
+        }
+        int[] page = order.page(rows, from, offset, pageSize);
+
+        List<VehicleDto> dtos = new ArrayList<>(page.length);
+        for (int r : page) dtos.add(t.dto(r));
+        String nextCursor = null;
+        if (page.length == pageSize) {
+            int last = page[page.length - 1];
+            Object[] values = new Object[sortColumns.length];
+            for (int i = 0; i < values.length; i++) values[i] = sortColumns[i].get(last);
+            nextCursor = GridTableCursor.encode(keys, values);
+        }
+        hits.incrementAndGet();
+        return Optional.of(new GridTableResponse<>(dtos, total, nextCursor, true));
+    }
+
+    void onVehicleChanged(@Observes VehicleChanged e) {
+        if (e.type() == VehicleChanged.Type.DELETED) vehicleDeleted(e.id());
+        else vehicleSaved(e.vehicle());
+    }
+
+    // Вызывается после persist/изменения сущности: значения снимаются сейчас, применяются после коммита
+    public void vehicleSaved(Vehicle v) {
+        if (!enabled || v.getId() == null) return;
+        Object[] row = row(VehicleDto.toDto(v));
+        enlist(t -> t.put(row));
+    }
+
+    public void vehicleDeleted(Long id) {
+        if (!enabled || id == null) return;
+        enlist(t -> t.remove(id));
+    }
+
+    // x/y координат лежат в строке каждого ТС, которое на них ссылается
+    public void coordinatesUpdated(Long coordinatesId, Double x, Float y) {
+        if (!enabled || coordinatesId == null) return;
+        enlist(t -> t.updateCoordinates(coordinatesId, x, y));
+    }
+
+    // Изменения мимо сущностей (COPY-импорт, переназначение координат): после коммита снимок перестраивается в фоне
+    public void invalidate() {
+        if (!enabled) return;
+        afterCommit.run(snapshot::invalidate);
+    }
+
+    // Снимок таблицы одним запросом. Транзакция нужна, чтобы драйвер читал курсором (fetchSize), а не всё сразу.
+    // Обычно вызывается в фоне (BackgroundSnapshot), вручную - из /cache/columnar/rebuild
+    @Transactional
+    public void rebuild() {
+        if (!enabled) return;
+        snapshot.rebuild(() -> {
+            Table t = new Table(1024);
+            try (Stream<Object[]> s = dao.streamColumnarRows()) {
+                for (Object[] r : (Iterable<Object[]>) s::iterator) t.put(r);
+            }
+            return t;
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("rows", snapshot.peek(Table::size));
+        out.put("capacity", snapshot.peek(t -> t.capacity));
+        out.put("sortOrders", snapshot.peek(t -> t.orders.size()));
+        snapshot.stats(out);
+        out.put("hits", hits.get());
+        out.put("fallbacks", fallbacks.get());
+        out.put("lastFallback", lastFallback);
+        return out;
+    }
+
+    private Optional<GridTableResponse<VehicleDto>> fallback(String reason) {
+        if (enabled) {
+            fallbacks.incrementAndGet();
+            lastFallback = reason;
+        }
+        return Optional.empty();
+    }
+
+    /* фильтрация и сортировка */
+
+    // То же, что GridCondition.test для каждой строки, но без упаковки значений: сравнения - по примитивам колонки,
+    // сами операции - TextOp.test/CompareOp.test. NULL не проходит ни одно условие (как в SQL).
+    // Text - только там, где lower(col) считается в памяти так же (TextColumn); ftsQuery не нужен -
+    // это лишь предфильтр под индекс, результат даёт само LIKE-условие. Compare - SortableColumn.
+    // false - колонка условие не поддерживает, rows в этом случае не годится
+    private static boolean retain(BitSet rows, GridCondition c, Column col) {
+        if (c instanceof GridCondition.Text text) {
+            // lower() не-ASCII текста зависит от ctype БД - такие фильтры считает только она
+            if (!(col instanceof TextColumn tc) || !isAscii(text.value())) return false;
+            rows.andNot(col.nulls);
+            if (!tc.lowerMatchesDatabase(rows)) return false;
+            GridCondition.TextOp op = text.op();
+            String v = text.value();
+            for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+                if (!op.test(tc.lowerText(r), v)) rows.clear(r);
+            }
+        } else if (c instanceof GridCondition.Compare cmp) {
+            if (!(col instanceof SortableColumn sc)) return false;
+            rows.andNot(col.nulls);
+            GridCondition.CompareOp op = cmp.op();
+            boolean between = op == GridCondition.CompareOp.BETWEEN;
+            Object v1 = cmp.v1();
+            Object v2 = cmp.v2();
+            for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+                int c2 = between ? sc.compareValue(r, v2) : 0;
+                if (!op.test(sc.compareValue(r, v1), c2)) rows.clear(r);
+            }
+        } else if (c instanceof GridCondition.In in) {
+            rows.andNot(col.nulls);
+            Set<Object> allowed = new HashSet<>(in.values());
+            for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+                if (!allowed.contains(col.get(r))) rows.clear(r);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0x7F) return false;
+        }
+        return true;
+    }
+
+    /* изменения */
+
+    private static Object[] row(VehicleDto d) {
+        return new Object[]{
+                d.getId(), d.getName(), d.getCreationTime(), d.getType(), d.getEnginePower(), d.getNumberOfWheels(),
+                d.getCapacity(), d.getDistanceTravelled(), d.getFuelConsumption(), d.getFuelType(),
+                d.getCoordinatesId(), d.getCoordinatesX(), d.getCoordinatesY()
+        };
+    }
+
+    // изменения текущей транзакции (импорт - тысячи строк на пачку) применяются одной пачкой после коммита
+    private void enlist(Consumer<Table> change) {
+        afterCommit.enlist(TX_CHANGES_KEY, change, snapshot::apply);
+    }
+
+    // Колонки + занятые слоты. Строка ТС живёт в слоте, освободившиеся слоты переиспользуются
+    private static final class Table {
+        private final Column[] columns = {
+                new Column.Longs(), new Column.Strings(), new Column.Times(), new Column.Enums<>(VehicleType.class),
+                new Column.Ints(), new Column.Ints(), new Column.Ints(), new Column.Ints(), new Column.Floats(),
+                new Column.Enums<>(FuelType.class), new Column.Longs(), new Column.Doubles(), new Column.Floats()
+        };
+        private final Map<String, Column> byColId = new HashMap<>();
+        private final Map<Long, Integer> slotById = new HashMap<>();
+        private final BitSet live = new BitSet();
+        // сортировка ("colId:d,id:d,") -> перестановка; строится под read-lock снимка, меняется под write-lock
+        private final Map<String, RowOrder> orders = new ConcurrentHashMap<>();
+        private int orderEdits; // изменений перестановок с их построения
+        private int[] free = new int[16];
+        private int freeCount;
+        private int capacity;
+        private int used; // слоты [0; used) когда-либо занимались
+
+        Table(int capacity) {
+            for (int i = 0; i < COLUMN_IDS.length; i++) byColId.put(COLUMN_IDS[i], columns[i]);
+            grow(capacity);
+        }
+
+        Column column(String colId) {
+            return byColId.get(colId);
+        }
+
+        int size() {
+            return slotById.size();
+        }
+
+        RowOrder order(String key, SortableColumn[] cols, boolean[] desc) {
+            RowOrder o = orders.get(key);
+            if (o != null) return o;
+            if (orders.size() >= MAX_ORDERS) orders.clear();
+            return orders.computeIfAbsent(key, k -> new RowOrder(cols, desc, live));
+        }
+
+        void put(Object[] row) {
+            Long id = ((Number) row[ID]).longValue();
+            Integer slot = slotById.get(id);
+            boolean track = editOrders();
+            if (slot == null) {
+                slot = freeCount > 0 ? free[--freeCount] : allocate();
+                slotById.put(id, slot);
+                live.set(slot);
+            } else if (track) {
+                for (RowOrder o : orders.values()) o.remove(slot);
+            }
+            for (int i = 0; i < columns.length; i++) columns[i].set(slot, row[i]);
+            if (track) {
+                for (RowOrder o : orders.values()) o.insert(slot);
+            }
+        }
+
+        void remove(Long id) {
+            Integer slot = slotById.remove(id);
+            if (slot == null) return;
+            if (editOrders()) {
+                for (RowOrder o : orders.values()) o.remove(slot);
+            }
+            live.clear(slot);
+            if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = slot;
+        }
+
+        void updateCoordinates(Long coordinatesId, Double x, Float y) {
+            orders.clear(); // x/y многих строк сразу - сортировки по координатам построятся заново
+            Column.Longs ids = (Column.Longs) columns[COORDINATES_ID];
+            long cid = coordinatesId;
+            for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+                if (!ids.isNull(r) && ids.getLong(r) == cid) {
+                    columns[COORDINATES_X].set(r, x);
+                    columns[COORDINATES_Y].set(r, y);
+                }
+            }
+        }
+
+        VehicleDto dto(int r) {
+            return VehicleDto.builder()
+                    .id((Long) columns[0].get(r))
+                    .name((String) columns[1].get(r))
+                    .creationTime((LocalDateTime) columns[2].get(r))
+                    .type((VehicleType) columns[3].get(r))
+                    .enginePower((Integer) columns[4].get(r))
+                    .numberOfWheels((Integer) columns[5].get(r))
+                    .capacity((Integer) columns[6].get(r))
+                    .distanceTravelled((Integer) columns[7].get(r))
+                    .fuelConsumption((Float) columns[8].get(r))
+                    .fuelType((FuelType) columns[9].get(r))
+                    .coordinatesId((Long) columns[10].get(r))
+                    .coordinatesX((Double) columns[11].get(r))
+                    .coordinatesY((Float) columns[12].get(r))
+                    .build();
+        }
+
+        // false - перестановок нет или изменений слишком много: они сброшены и построятся при чтении
+        private boolean editOrders() {
+            if (orders.isEmpty()) return false;
+            if (++orderEdits <= MAX_ORDER_EDITS) return true;
+            orders.clear();
+            orderEdits = 0;
+            return false;
+        }
+
+        private int allocate() {
+            if (used == capacity) grow(Math.max(1024, capacity * 2));
+            return used++;
+        }
+
+        private void grow(int newCapacity) {
+            for (Column c : columns) c.grow(newCapacity);
+            capacity = newCapacity;
+        }
+    }
+}
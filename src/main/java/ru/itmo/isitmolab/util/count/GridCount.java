@@ -0,0 +1,12 @@
+package ru.itmo.isitmolab.util.count;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Итог подсчёта: значение и признак, точное ли оно (оценка планировщика - неточное)
+@Getter
+@AllArgsConstructor
+public class GridCount {
+    private final long total;
+    private final boolean exact;
+}
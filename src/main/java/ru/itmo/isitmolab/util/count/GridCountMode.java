@@ -0,0 +1,19 @@
+package ru.itmo.isitmolab.util.count;
+
+import java.util.Locale;
+
+// Стратегия подсчёта lastRow для гридов
+public enum GridCountMode {
+    EXACT,    // count(*) с фильтрами на каждую страницу
+    ESTIMATE, // оценка планировщика PostgreSQL (pg_class.reltuples) без фильтра, с фильтром - как CACHED
+    CACHED;   // точный count(*), закешированный по нормализованному filterModel до ближайшей записи
+
+    public static GridCountMode parse(String s, GridCountMode def) {
+        if (s == null || s.isBlank()) return def;
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return def;
+        }
+    }
+}
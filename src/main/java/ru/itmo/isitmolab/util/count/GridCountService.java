@@ -0,0 +1,99 @@
+package ru.itmo.isitmolab.util.count;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.AllArgsConstructor;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.tx.AfterCommit;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@ApplicationScoped
+public class GridCountService {
+
+    // JAVA_OPTS="-Dgrid.count.mode=cached -Dgrid.count.cache.ttl.ms=60000 -Dgrid.count.cache.max=1000"
+    private volatile GridCountMode mode =
+            GridCountMode.parse(System.getProperty("grid.count.mode"), GridCountMode.EXACT);
+    private final long ttlMillis = Long.getLong("grid.count.cache.ttl.ms", 60_000L); // на случай записей мимо приложения
+    private final int maxEntries = Integer.getInteger("grid.count.cache.max", 1_000);
+
+    // ключ - таблица + GridFilter.key()
+    private final Map<String, CachedTotal> cache = new ConcurrentHashMap<>();
+    // версия данных: растёт на каждой записи, устаревшие подсчёты не попадают в кеш
+    private final AtomicLong version = new AtomicLong();
+
+    @Inject
+    AfterCommit afterCommit;
+
+    public GridCountMode getMode() {
+        return mode;
+    }
+
+    public void setMode(GridCountMode mode) {
+        this.mode = mode;
+        invalidateNow();
+    }
+
+    public GridCount count(String table, GridFilter filter, LongSupplier exact, LongSupplier estimate) {
+        return switch (mode) {
+            case EXACT -> new GridCount(exact.getAsLong(), true);
+            case CACHED -> cached(table, filter, exact);
+            case ESTIMATE -> {
+                if (filter.isEmpty()) {
+                    long est = estimate.getAsLong();
+                    // reltuples = -1/0, если по таблице ещё не было ANALYZE
+                    if (est > 0) yield new GridCount(est, false);
+                }
+                // для отфильтрованного запроса дешёвой оценки без SQL-текста нет - кешируем точное значение
+                yield cached(table, filter, exact);
+            }
+        };
+    }
+
+    // Вызывается из тех же мест, что шлют "refresh" по WebSocket (+ удаления и изменения координат).
+    // Чистим сразу и повторно после завершения транзакции: иначе параллельный запрос может
+    // положить в кеш значение, посчитанное до коммита
+    public void invalidate() {
+        invalidateNow();
+        afterCommit.afterCompletion(this::invalidateNow);
+    }
+
+    void onVehicleChanged(@Observes VehicleChanged e) {
+        invalidate();
+    }
+
+    private void invalidateNow() {
+        version.incrementAndGet();
+        cache.clear();
+    }
+
+    private GridCount cached(String table, GridFilter filter, LongSupplier exact) {
+        String key = table + ':' + filter.key();
+        long now = System.currentTimeMillis();
+
+        CachedTotal c = cache.get(key);
+        if (c != null && c.version == version.get() && now - c.createdAt < ttlMillis) {
+            return new GridCount(c.total, true);
+        }
+
+        long v = version.get();
+        long total = exact.getAsLong();
+        if (v == version.get()) {
+            if (cache.size() >= maxEntries) cache.clear(); // грубое ограничение размера
+            cache.put(key, new CachedTotal(total, v, now));
+        }
+        return new GridCount(total, true);
+    }
+
+    @AllArgsConstructor
+    private static final class CachedTotal {
+        final long total;
+        final long version;
+        final long createdAt;
+    }
+}
@@ -0,0 +1,119 @@
+package ru.itmo.isitmolab.util.filter;
+
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Колонка грида ("name", "coordinates.x"), один раз разобранная по JPA-метамодели:
+// сегменты пути, какие из них - ассоциации (JOIN), конечный Java-тип, может ли значение быть NULL.
+// Кешируется на класс сущности, запрос больше не делает split и getJavaType()
+public final class GridColumn {
+
+    // класс сущности -> colId -> колонка
+    private static final Map<Class<?>, Map<String, GridColumn>> CACHE = new ConcurrentHashMap<>();
+
+    private final String colId;
+    private final String[] segments;
+    private final boolean[] association;
+    private final Class<?> javaType;
+    private final boolean nullable;
+
+    private GridColumn(String colId, String[] segments, boolean[] association, Class<?> javaType, boolean nullable) {
+        this.colId = colId;
+        this.segments = segments;
+        this.association = association;
+        this.javaType = javaType;
+        this.nullable = nullable;
+    }
+
+    // IllegalArgumentException - в сущности нет такого атрибута (как и у root.get()); такие не кешируются
+    public static GridColumn of(ManagedType<?> model, String colId) {
+        Map<String, GridColumn> byId = CACHE.computeIfAbsent(model.getJavaType(), k -> new ConcurrentHashMap<>());
+        GridColumn c = byId.get(colId);
+        if (c == null) {
+            c = resolve(model, colId);
+            byId.putIfAbsent(colId, c);
+        }
+        return c;
+    }
+
+    private static GridColumn resolve(ManagedType<?> model, String colId) {
+        String[] parts = colId.split("\\.");
+        boolean[] assoc = new boolean[parts.length];
+        ManagedType<?> type = model;
+        Class<?> javaType = null;
+        boolean nullable = false;
+        for (int i = 0; i < parts.length; i++) {
+            Attribute<?, ?> a = type.getAttribute(parts[i]);
+            assoc[i] = a.isAssociation();
+            javaType = a.getJavaType();
+            // optional у атрибута - nullable=false колонки / optional=false ассоциации; NULL даст любой сегмент пути
+            nullable |= !(a instanceof SingularAttribute<?, ?> single) || single.isOptional();
+            if (i < parts.length - 1) {
+                // промежуточный сегмент - ManyToOne/OneToOne или embeddable
+                if (a instanceof SingularAttribute<?, ?> sa && sa.getType() instanceof ManagedType<?> next) {
+                    type = next;
+                } else {
+                    throw new IllegalArgumentException("Column " + colId + ": " + parts[i] + " is not a single-valued path");
+                }
+            }
+        }
+        return new GridColumn(colId, parts, assoc, javaType, nullable);
+    }
+
+    public String getColId() {
+        return colId;
+    }
+
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public boolean isString() {
+        return javaType == String.class;
+    }
+
+    // Path до колонки от root: ассоциации - LEFT JOIN, уже существующий join на root переиспользуется
+    // (фильтр, сортировка и select по coordinates.* получают один и тот же join)
+    public Path<?> path(Root<?> root) {
+        Path<?> p = root;
+        From<?, ?> from = root;
+        for (int i = 0; i < segments.length; i++) {
+            String part = segments[i];
+            if (i < segments.length - 1 && association[i]) {
+                from = join(from, part);
+                p = from;
+            } else {
+                p = p.get(part);
+                if (p instanceof From<?, ?> f)
+                    from = f;
+            }
+        }
+        return p;
+    }
+
+    private static From<?, ?> join(From<?, ?> from, String attribute) {
+        for (Join<?, ?> j : from.getJoins()) {
+            if (j.getAttribute() != null && j.getAttribute().getName().equals(attribute))
+                return j;
+        }
+        return from.join(attribute, JoinType.LEFT);
+    }
+
+    @Override
+    public String toString() {
+        return colId;
+    }
+}
@@ -0,0 +1,158 @@
+package ru.itmo.isitmolab.util.filter;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+
+import java.util.List;
+import java.util.Locale;
+
+// Узел разобранного filterModel: значения уже приведены к типу колонки, шаблоны LIKE собраны.
+// Применение к Criteria - только вызовы CriteriaBuilder, без разбора Map и рефлексии.
+// То же условие проверяется и в памяти (test): подписки WebSocket, VehicleColumnStore
+public sealed interface GridCondition {
+
+    GridColumn column();
+
+    void apply(CriteriaBuilder cb, Path<?> path, List<Predicate> out);
+
+    // значение колонки (в её Java-типе) проходит условие; NULL не проходит ни одно условие, как в SQL
+    boolean test(Object value);
+
+    // часть ключа кеша: колонка + операция + нормализованные значения
+    String key();
+
+    enum TextOp {
+        CONTAINS, EQUALS, STARTS_WITH, ENDS_WITH, NOT_EQUAL;
+
+        // s - значение колонки в нижнем регистре, value - значение фильтра (Text.value)
+        public boolean test(String s, String value) {
+            return switch (this) {
+                case CONTAINS -> s.contains(value);
+                case EQUALS -> s.equals(value);
+                case STARTS_WITH -> s.startsWith(value);
+                case ENDS_WITH -> s.endsWith(value);
+                case NOT_EQUAL -> !s.equals(value);
+            };
+        }
+    }
+
+    // lower(col) LIKE/=/<> value (value уже в нижнем регистре, pattern экранирован);
+    // ftsQuery != null - дополнительный предфильтр fn_text_matches (режим TextSearchMode.FTS)
+    record Text(GridColumn column, TextOp op, String value, String pattern, String ftsQuery) implements GridCondition {
+
+        static final char LIKE_ESCAPE = '\\';
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void apply(CriteriaBuilder cb, Path<?> path, List<Predicate> out) {
+            // строковую колонку не приводим через as() - иначе в SQL появляется cast
+            // и lower(name) перестаёт совпадать с выражением индекса vehicle_name_trgm_idx
+            Expression<String> str = column.isString() ? (Expression<String>) path : path.as(String.class);
+            Expression<String> exp = cb.lower(str);
+            switch (op) {
+                case CONTAINS, STARTS_WITH, ENDS_WITH -> out.add(cb.like(exp, pattern, LIKE_ESCAPE));
+                case EQUALS -> out.add(cb.equal(exp, value));
+                case NOT_EQUAL -> out.add(cb.notEqual(exp, value));
+            }
+            if (ftsQuery != null) {
+                // необходимое условие для LIKE выше: сужает выборку по GIN-индексу, результат не меняет
+                out.add(cb.isTrue(cb.function("fn_text_matches", Boolean.class, str, cb.literal(ftsQuery))));
+            }
+        }
+
+        // lower() в памяти - Locale.ROOT; с lower() БД он совпадает на ASCII (см. VehicleColumnStore)
+        @Override
+        public boolean test(Object v) {
+            if (v == null) return false;
+            String s = v instanceof Enum<?> e ? e.name() : String.valueOf(v);
+            return op.test(s.toLowerCase(Locale.ROOT), value);
+        }
+
+        @Override
+        public String key() {
+            return column + ":text:" + op + ":" + value.length() + ":" + value; // длина - чтобы ';' в значении не склеил условия
+        }
+    }
+
+    enum CompareOp {
+        EQ, NE, LT, LE, GT, GE, BETWEEN;
+
+        // c1/c2 - результат сравнения значения колонки с v1/v2 (c2 нужен только BETWEEN)
+        public boolean test(int c1, int c2) {
+            return switch (this) {
+                case EQ -> c1 == 0;
+                case NE -> c1 != 0;
+                case LT -> c1 < 0;
+                case LE -> c1 <= 0;
+                case GT -> c1 > 0;
+                case GE -> c1 >= 0;
+                case BETWEEN -> c1 >= 0 && c2 <= 0;
+            };
+        }
+    }
+
+    // сравнение числа/даты; v1/v2 уже в типе колонки (Integer для int-колонки, LocalDateTime для даты)
+    record Compare(GridColumn column, CompareOp op, Comparable<?> v1, Comparable<?> v2) implements GridCondition {
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public void apply(CriteriaBuilder cb, Path<?> path, List<Predicate> out) {
+            // тип значений совпадает с типом колонки - as() с cast в SQL не нужен
+            Expression<Comparable> e = (Expression<Comparable>) path;
+            Comparable a = v1;
+            Comparable b = v2;
+            out.add(switch (op) {
+                case EQ -> cb.equal(e, a);
+                case NE -> cb.notEqual(e, a);
+                case LT -> cb.lessThan(e, a);
+                case LE -> cb.lessThanOrEqualTo(e, a);
+                case GT -> cb.greaterThan(e, a);
+                case GE -> cb.greaterThanOrEqualTo(e, a);
+                case BETWEEN -> cb.between(e, a, b);
+            });
+        }
+
+        // v в типе колонки - сравнение тем же compareTo, что у v1/v2 (Float.compare для float и т.п.)
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public boolean test(Object v) {
+            if (v == null) return false;
+            Comparable c = (Comparable) v;
+            return op.test(c.compareTo(v1), op == CompareOp.BETWEEN ? c.compareTo(v2) : 0);
+        }
+
+        @Override
+        public String key() {
+            return column + ":" + op + ":" + v1 + (op == CompareOp.BETWEEN ? ".." + v2 : "");
+        }
+    }
+
+    // col IN (...), значения уже приведены к типу колонки (enum, Integer, ...)
+    record In(GridColumn column, List<Object> values) implements GridCondition {
+
+        @Override
+        public void apply(CriteriaBuilder cb, Path<?> path, List<Predicate> out) {
+            CriteriaBuilder.In<Object> in = cb.in(path);
+            for (Object v : values)
+                in.value(v);
+            out.add(in);
+        }
+
+        @Override
+        public boolean test(Object v) {
+            return v != null && values.contains(v);
+        }
+
+        @Override
+        public String key() {
+            StringBuilder sb = new StringBuilder(column + ":in:");
+            for (Object v : values) {
+                String s = String.valueOf(v);
+                sb.append(s.length()).append(':').append(s).append(',');
+            }
+            return sb.toString();
+        }
+    }
+}
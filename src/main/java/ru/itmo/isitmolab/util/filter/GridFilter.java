@@ -0,0 +1,55 @@
+package ru.itmo.isitmolab.util.filter;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Неизменяемый разобранный filterModel для одной сущности (см. GridTablePredicateBuilder.compile).
+// Один и тот же фильтр применяется к любому Root этой сущности: запрос id страницы, count(*), DTO-проекция
+public final class GridFilter {
+
+    private final Class<?> entity;
+    private final Map<String, Object> source; // filterModel, из которого собран (мемоизация в GridTableRequest)
+    private final List<GridCondition> conditions;
+    private final String key;
+
+    public GridFilter(Class<?> entity, Map<String, Object> source, List<GridCondition> conditions) {
+        this.entity = entity;
+        this.source = source;
+        this.conditions = List.copyOf(conditions);
+        // порядок колонок в JSON не влияет на ключ
+        List<String> parts = new ArrayList<>(conditions.size());
+        for (GridCondition c : conditions) parts.add(c.key());
+        parts.sort(null);
+        this.key = String.join(";", parts);
+    }
+
+    public List<Predicate> toPredicates(CriteriaBuilder cb, Root<?> root) {
+        List<Predicate> out = new ArrayList<>(conditions.size() + 1); // + seek-условие keyset-пагинации
+        for (GridCondition c : conditions)
+            c.apply(cb, c.column().path(root), out);
+        return out;
+    }
+
+    public List<GridCondition> getConditions() {
+        return conditions;
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    // Нормализованный ключ фильтра - ключ кеша страниц (GridPageCache) и итогов (GridCountService):
+    // значения уже в типах колонок (100 и 100.0 для int-колонки совпадают), пустые условия отброшены
+    public String key() {
+        return key;
+    }
+
+    public boolean isFor(Class<?> entity, Map<String, Object> filterModel) {
+        return this.entity == entity && this.source == filterModel;
+    }
+}
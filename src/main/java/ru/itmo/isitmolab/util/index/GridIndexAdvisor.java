@@ -0,0 +1,238 @@
+package ru.itmo.isitmolab.util.index;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import ru.itmo.isitmolab.dao.SchemaDao;
+import ru.itmo.isitmolab.dto.GridTableRequest;
+import ru.itmo.isitmolab.dto.GridTableSortModel;
+import ru.itmo.isitmolab.util.GridTableCursor;
+import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
+import ru.itmo.isitmolab.util.TextSearchMode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Какие комбинации фильтров и сортировок грида реально приходят и какие из них БД не может
+// обслужить индексом. Форма запроса = таблица + (колонка, тип фильтра, оператор)* + сортировка,
+// значения фильтров не запоминаются. Плюс сверка с управляемым набором индексов из sql/indexes.sql
+@ApplicationScoped
+public class GridIndexAdvisor {
+
+    private static final Logger log = Logger.getLogger(GridIndexAdvisor.class.getName());
+
+    // должен совпадать с sql/indexes.sql
+    public static final List<String> MANAGED_INDEXES = List.of(
+            "vehicle_creation_time_id_idx",
+            "vehicle_name_trgm_idx",
+            "vehicle_name_uniq", // индекс UNIQUE-ограничения из sql/init.sql
+            "vehicle_name_fts_idx",
+            "vehicle_coordinates_id_idx",
+            "vehicle_engine_power_id_idx",
+            "vehicle_number_of_wheels_id_idx",
+            "vehicle_capacity_id_idx",
+            "vehicle_distance_travelled_id_idx",
+            "vehicle_fuel_consumption_id_idx",
+            "vehicle_type_id_idx",
+            "vehicle_fuel_type_id_idx",
+            "coordinates_y_id_idx"
+    );
+
+    private static final List<String> TABLES = List.of("vehicle", "coordinates");
+
+    // JAVA_OPTS="-Dindex.advisor.enabled=false -Dindex.advisor.max.shapes=500"
+    private final boolean enabled =
+            Boolean.parseBoolean(System.getProperty("index.advisor.enabled", "true"));
+    private final int maxShapes = Integer.getInteger("index.advisor.max.shapes", 500);
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong(); // новые формы сверх maxShapes
+
+    @Inject
+    SchemaDao schemaDao;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        try {
+            List<IndexInfo> indexes = indexes();
+            List<String> missing = missingManaged(indexes);
+            if (missing.isEmpty()) {
+                log.info("Grid indexes OK");
+            } else {
+                log.warning("Grid indexes missing (apply sql/indexes.sql): " + String.join(", ", missing));
+            }
+            checkTextSearch(indexes);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Cannot check grid indexes", e);
+        }
+    }
+
+    // fts без функции/индекса не выполнится или пойдёт seq scan - откатываемся на LIKE;
+    // LIKE без pg_trgm работает всегда, только медленнее
+    private void checkTextSearch(List<IndexInfo> indexes) {
+        if (!hasTrigram(indexes, "vehicle", "lower(name)")) {
+            log.warning("No trigram index on lower(vehicle.name)"
+                    + (schemaDao.extensionInstalled("pg_trgm") ? "" : " (pg_trgm is not installed)")
+                    + ": contains/endsWith text filters use seq scan");
+        }
+        if (GridTablePredicateBuilder.getTextSearchMode() == TextSearchMode.FTS
+                && (!schemaDao.functionExists("fn_text_matches")
+                || indexes.stream().noneMatch(i -> "vehicle_name_fts_idx".equals(i.getName())))) {
+            log.warning("grid.text.search=fts needs fn_text_matches (sql/init.sql) and vehicle_name_fts_idx"
+                    + " (sql/indexes.sql), falling back to trigram");
+            GridTablePredicateBuilder.setTextSearchMode(TextSearchMode.TRIGRAM);
+        }
+    }
+
+    // table - таблица грида ("vehicle" / "coordinates"), defaultSort - сортировка DAO без sortModel
+    public void record(String table, GridTableRequest req, List<GridTableSortModel> defaultSort) {
+        if (!enabled || req == null) return;
+
+        List<String> filters = new ArrayList<>();
+        if (req.filterModel != null) {
+            // TreeMap - форма не зависит от порядка колонок в JSON
+            new TreeMap<>(req.filterModel).forEach((col, v) -> {
+                if (v instanceof Map<?, ?> fm) {
+                    Object op = "set".equals(fm.get("filterType")) ? "in" : fm.get("type");
+                    filters.add(col + ":" + fm.get("filterType") + ":" + op);
+                }
+            });
+        }
+        List<String> sort = new ArrayList<>();
+        for (GridTableSortModel s : GridTableCursor.effectiveSort(req.sortModel, defaultSort)) {
+            sort.add(s.getColId() + " " + s.getSort());
+        }
+
+        String key = table + "|" + filters + "|" + sort;
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            if (shapes.size() >= maxShapes) {
+                dropped.incrementAndGet();
+                return;
+            }
+            shape = shapes.computeIfAbsent(key, k -> new Shape(table, filters, sort));
+        }
+        shape.count.incrementAndGet();
+    }
+
+    public Map<String, Object> report() {
+        List<IndexInfo> indexes = indexes();
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        shapes.values().stream()
+                .sorted(Comparator.comparingLong((Shape s) -> s.count.get()).reversed())
+                .forEach(s -> {
+                    List<String> unsupported = unsupported(s, indexes);
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("table", s.table);
+                    row.put("filters", s.filters);
+                    row.put("sort", s.sort);
+                    row.put("count", s.count.get());
+                    row.put("indexed", unsupported.isEmpty());
+                    row.put("unsupported", unsupported);
+                    rows.add(row);
+                });
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("textSearchMode", GridTablePredicateBuilder.getTextSearchMode());
+        out.put("missingManagedIndexes", missingManaged(indexes));
+        out.put("shapes", rows);
+        out.put("droppedShapes", dropped.get());
+        List<String> existing = new ArrayList<>();
+        indexes.forEach(i -> existing.add(i.getTable() + "." + i.getName() + " " + i.getMethod() + " " + i.getKeys()));
+        out.put("indexes", existing);
+        return out;
+    }
+
+    public void reset() {
+        shapes.clear();
+        dropped.set(0);
+    }
+
+    private List<IndexInfo> indexes() {
+        List<IndexInfo> out = new ArrayList<>();
+        schemaDao.indexDefinitions(TABLES).forEach((name, def) -> out.add(IndexInfo.parse(name, def)));
+        return out;
+    }
+
+    private static List<String> missingManaged(List<IndexInfo> indexes) {
+        List<String> missing = new ArrayList<>(MANAGED_INDEXES);
+        indexes.forEach(i -> missing.remove(i.getName()));
+        return missing;
+    }
+
+    // причины, по которым часть запроса пойдёт seq scan / Sort; пусто - всё покрыто индексами
+    private static List<String> unsupported(Shape s, List<IndexInfo> indexes) {
+        List<String> out = new ArrayList<>();
+        for (String f : s.filters) {
+            String[] p = f.split(":", 3);
+            Column c = column(s.table, p[0]);
+            String filterType = p[1];
+            String op = p[2];
+            if ("notEqual".equals(op)) {
+                out.add(f + " - <> is not indexable");
+            } else if ("text".equals(filterType)) {
+                String expr = "lower(" + c.name + ")";
+                boolean prefix = "equals".equals(op) || "startsWith".equals(op);
+                if (!hasTrigram(indexes, c.table, expr) && !(prefix && hasBtree(indexes, c.table, expr))) {
+                    out.add(f + " - needs gin (" + expr + " gin_trgm_ops) on " + c.table);
+                }
+            } else if (!hasBtree(indexes, c.table, c.name)) {
+                out.add(f + " - needs btree on " + c.table + "(" + c.name + ")");
+            }
+        }
+        // порядок даёт индекс с той же ведущей колонкой (btree читается в обе стороны)
+        String first = s.sort.get(0).split(" ")[0];
+        Column c = column(s.table, first);
+        if (!hasBtree(indexes, c.table, c.name)) {
+            out.add("sort " + s.sort.get(0) + " - needs btree on " + c.table + "(" + c.name + ", id)");
+        }
+        return out;
+    }
+
+    private static boolean hasBtree(List<IndexInfo> indexes, String table, String leading) {
+        return indexes.stream().anyMatch(i -> i.isBtree() && table.equals(i.getTable()) && leading.equals(i.leading()));
+    }
+
+    private static boolean hasTrigram(List<IndexInfo> indexes, String table, String leading) {
+        return indexes.stream().anyMatch(i -> i.isTrigram() && table.equals(i.getTable()) && leading.equals(i.leading()));
+    }
+
+    // colId грида -> таблица и колонка: "enginePower" -> vehicle.engine_power, "coordinates.x" -> coordinates.x
+    private static Column column(String table, String colId) {
+        if ("vehicle".equals(table) && colId.startsWith("coordinates.")) {
+            String field = colId.substring("coordinates.".length());
+            return "id".equals(field) ? new Column("vehicle", "coordinates_id") : new Column("coordinates", snake(field));
+        }
+        return new Column(table, snake(colId));
+    }
+
+    private static String snake(String camel) {
+        return camel.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+
+    private record Column(String table, String name) {
+    }
+
+    private static final class Shape {
+        final String table;
+        final List<String> filters;
+        final List<String> sort;
+        final AtomicLong count = new AtomicLong();
+
+        Shape(String table, List<String> filters, List<String> sort) {
+            this.table = table;
+            this.filters = filters;
+            this.sort = sort;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.itmo.isitmolab.util.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Разобранное определение индекса из pg_get_indexdef:
+// "CREATE INDEX vehicle_engine_power_id_idx ON public.vehicle USING btree (engine_power, id)"
+@Getter
+@AllArgsConstructor
+public class IndexInfo {
+    private String name;
+    private String table;
+    private String method;    // btree | gin | ...
+    private List<String> keys; // "engine_power", "lower(name) gin_trgm_ops", "creation_time DESC"
+
+    public static IndexInfo parse(String name, String def) {
+        String d = def.trim();
+        String lower = d.toLowerCase(Locale.ROOT);
+
+        int on = lower.indexOf(" on ");
+        int using = lower.indexOf(" using ", on);
+        String table = on < 0 ? "" : d.substring(on + 4, using < 0 ? d.length() : using).trim();
+        if (table.startsWith("ONLY ")) table = table.substring(5).trim();
+        int dot = table.lastIndexOf('.');
+        if (dot >= 0) table = table.substring(dot + 1);
+
+        int open = d.indexOf('(', using < 0 ? 0 : using);
+        String method = using < 0 ? "btree" : d.substring(using + 7, open < 0 ? d.length() : open).trim();
+
+        List<String> keys = new ArrayList<>();
+        if (open >= 0) {
+            // ключи - до закрывающей скобки того же уровня, запятые внутри lower(...) не делят
+            int depth = 0;
+            StringBuilder cur = new StringBuilder();
+            for (int i = open + 1; i < d.length(); i++) {
+                char c = d.charAt(i);
+                if (c == '(') depth++;
+                if (c == ')' && depth-- == 0) break;
+                if (c == ',' && depth == 0) {
+                    keys.add(cur.toString().trim());
+                    cur.setLength(0);
+                } else {
+                    cur.append(c);
+                }
+            }
+            if (!cur.isEmpty()) keys.add(cur.toString().trim());
+        }
+        return new IndexInfo(name, table, method.toLowerCase(Locale.ROOT), keys);
+    }
+
+    // первый ключ без направления, NULLS и opclass: "creation_time DESC" -> "creation_time"
+    public String leading() {
+        if (keys.isEmpty()) return "";
+        String k = keys.get(0);
+        int depth = 0;
+        for (int i = 0; i < k.length(); i++) {
+            char c = k.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == ' ' && depth == 0) return k.substring(0, i);
+        }
+        return k;
+    }
+
+    public boolean isBtree() {
+        return "btree".equals(method);
+    }
+
+    public boolean isTrigram() {
+        return ("gin".equals(method) || "gist".equals(method))
+                && !keys.isEmpty() && keys.get(0).contains("trgm_ops");
+    }
+}
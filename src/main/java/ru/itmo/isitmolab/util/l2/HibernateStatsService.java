@@ -4,7 +4,18 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceUnit;
 import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
 import org.hibernate.stat.Statistics;
+import org.infinispan.Cache;
+import org.infinispan.hibernate.cache.v62.InfinispanRegionFactory;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.stats.Stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @ApplicationScoped
 public class HibernateStatsService {
@@ -20,4 +31,44 @@ public class HibernateStatsService {
         }
         return st;
     }
+
+    // null - L2 работает не на Infinispan
+    public EmbeddedCacheManager cacheManager() {
+        RegionFactory rf = emf.unwrap(SessionFactoryImplementor.class).getCache().getRegionFactory();
+        return rf instanceof InfinispanRegionFactory irf ? irf.getCacheManager() : null;
+    }
+
+    // Статистика по каждому региону L2: счётчики Hibernate + вытеснения/объём из самого кеша Infinispan
+    public List<L2RegionStats> regionStats() {
+        Statistics st = stats();
+        EmbeddedCacheManager cm = cacheManager();
+        String[] names = st.getSecondLevelCacheRegionNames();
+        if (names == null) return List.of();
+
+        List<L2RegionStats> out = new ArrayList<>();
+        Arrays.stream(names).sorted().forEach(region -> {
+            CacheRegionStatistics rs = st.getCacheRegionStatistics(region);
+            if (rs == null) return;
+            L2RegionStats.L2RegionStatsBuilder b = L2RegionStats.builder()
+                    .region(region)
+                    .hitCount(rs.getHitCount())
+                    .missCount(rs.getMissCount())
+                    .putCount(rs.getPutCount())
+                    .elementCountInMemory(rs.getElementCountInMemory())
+                    .sizeInMemory(rs.getSizeInMemory())
+                    .evictionCount(-1)
+                    .dataMemoryUsed(-1);
+            // статистика Infinispan включена атрибутом statistics="true" в infinispan-config-local.xml
+            if (cm != null && cm.cacheExists(region)) {
+                Cache<?, ?> cache = cm.getCache(region);
+                if (cache.getCacheConfiguration().statistics().enabled()) {
+                    Stats s = cache.getAdvancedCache().getStats();
+                    b.evictionCount(s.getEvictions())
+                            .dataMemoryUsed(s.getDataMemoryUsed()); // только при max-size, иначе 0/-1
+                }
+            }
+            out.add(b.build());
+        });
+        return out;
+    }
 }
@@ -0,0 +1,96 @@
+package ru.itmo.isitmolab.util.l2;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.persistence.metamodel.EntityType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.manager.EmbeddedCacheManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Проверка при старте: у каждого региона из @Cache/@NaturalIdCache должен быть свой кеш
+// в infinispan-config-local.xml с ограничением размера и истечением по простою.
+// Иначе регион молча берёт общий шаблон и может расти вместе с таблицей
+@ApplicationScoped
+public class L2CacheConfigCheck {
+
+    private static final Logger log = Logger.getLogger(L2CacheConfigCheck.class.getName());
+
+    // JAVA_OPTS="-Dl2.config.check.strict=true" - при ошибках конфигурации не поднимать приложение
+    private final boolean strict = Boolean.getBoolean("l2.config.check.strict");
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
+    @Inject
+    HibernateStatsService statsService;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        List<String> problems = check();
+        if (problems.isEmpty()) {
+            log.info("L2 cache configuration OK");
+            return;
+        }
+        problems.forEach(p -> log.warning("[L2 config] " + p));
+        if (strict) {
+            throw new IllegalStateException("L2 cache configuration is invalid: " + String.join("; ", problems));
+        }
+    }
+
+    public List<String> check() {
+        List<String> problems = new ArrayList<>();
+        SessionFactoryImplementor sf = emf.unwrap(SessionFactoryImplementor.class);
+        EmbeddedCacheManager cacheManager = statsService.cacheManager();
+        if (cacheManager == null) {
+            problems.add("region factory is not Infinispan: " + sf.getCache().getRegionFactory().getClass().getName());
+            return problems;
+        }
+
+        regions().forEach((region, owner) -> {
+            if (sf.getCache().getRegion(region) == null) {
+                problems.add(owner + ": region '" + region + "' is not registered in Hibernate");
+            }
+            Configuration cfg = cacheManager.getCacheConfiguration(region);
+            if (cfg == null) {
+                problems.add(owner + ": no <local-cache name=\"" + region + "\"> in infinispan config, default template is used");
+                return;
+            }
+            if (!cfg.memory().isEvictionEnabled()) {
+                problems.add(owner + ": cache '" + region + "' has no max-count/max-size bound");
+            }
+            if (cfg.expiration().maxIdle() <= 0 && cfg.expiration().lifespan() <= 0) {
+                problems.add(owner + ": cache '" + region + "' has no expiration");
+            }
+        });
+        return problems;
+    }
+
+    // регион -> сущность, которая его объявила
+    private Map<String, String> regions() {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (EntityType<?> et : emf.getMetamodel().getEntities()) {
+            Class<?> type = et.getJavaType();
+            Cache cache = type.getAnnotation(Cache.class);
+            if (cache != null) {
+                out.put(cache.region().isEmpty() ? type.getName() : cache.region(), type.getSimpleName());
+            }
+            NaturalIdCache naturalId = type.getAnnotation(NaturalIdCache.class);
+            if (naturalId != null) {
+                out.put(naturalId.region().isEmpty() ? type.getName() + "##NaturalId" : naturalId.region(),
+                        type.getSimpleName() + " natural id");
+            }
+        }
+        return out;
+    }
+}
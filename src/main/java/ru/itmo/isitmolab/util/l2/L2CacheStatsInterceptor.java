@@ -6,6 +6,7 @@ import jakarta.interceptor.AroundInvoke;
 import jakarta.interceptor.Interceptor;
 import jakarta.interceptor.InvocationContext;
 import org.hibernate.stat.Statistics;
+import ru.itmo.isitmolab.util.metrics.MetricsRegistry;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,10 +18,16 @@ public class L2CacheStatsInterceptor {
 
     private static final Logger log = Logger.getLogger(L2CacheStatsInterceptor.class.getName());
 
+    public static final String HITS = "l2_method_hits";
+    public static final String MISSES = "l2_method_misses";
+    public static final String PUTS = "l2_method_puts";
+
     @Inject
     L2CacheStatsToggle toggle;
     @Inject
     HibernateStatsService statsService;
+    @Inject
+    MetricsRegistry metrics;
 
     @AroundInvoke
     public Object around(InvocationContext ctx) throws Exception {
@@ -50,6 +57,13 @@ public class L2CacheStatsInterceptor {
         long dm = missAfter - missBefore;
         long dp = putsAfter - putsBefore;
 
+        // распределение по методам: /cache/stats и /metrics
+        // (счётчики Statistics общие на всё приложение, при параллельных вызовах дельта приблизительная)
+        String method = ctx.getMethod().getDeclaringClass().getSimpleName() + "." + ctx.getMethod().getName();
+        metrics.histogram(HITS, "L2 cache hits per DAO call", "method", method).record(dh);
+        metrics.histogram(MISSES, "L2 cache misses per DAO call", "method", method).record(dm);
+        metrics.histogram(PUTS, "L2 cache puts per DAO call", "method", method).record(dp);
+
         if (dh != 0 || dm != 0 || dp != 0) {
             log.info(() -> "[L2] " + ctx.getMethod() + ": hits +" + dh + ", miss +" + dm + ", puts +" + dp);
         }
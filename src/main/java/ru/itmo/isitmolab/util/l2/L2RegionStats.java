@@ -0,0 +1,22 @@
+package ru.itmo.isitmolab.util.l2;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// -1 - значение недоступно (статистика региона в Infinispan выключена или не поддерживается)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class L2RegionStats {
+    private String region;
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+    private long elementCountInMemory;
+    private long sizeInMemory;
+    private long dataMemoryUsed;
+}
@@ -0,0 +1,79 @@
+package ru.itmo.isitmolab.util.metrics;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+import ru.itmo.isitmolab.dto.GridTablePage;
+import ru.itmo.isitmolab.dto.GridTableResponse;
+import ru.itmo.isitmolab.util.sql.SqlStatementCounter;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Время, число SQL и число строк на каждый вызов метода DAO/сервиса - в гистограммы MetricsRegistry.
+// Видно без профилировщика: N+1 (sql p99 растёт вместе с rows), медленные пути (latency p99)
+@Instrumented
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION + 40)
+public class InstrumentationInterceptor {
+
+    public static final String LATENCY = "method_latency_us";
+    public static final String SQL = "method_sql_statements";
+    public static final String ROWS = "method_rows";
+
+    // JAVA_OPTS="-Dmetrics.instrumentation.enabled=false"
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(System.getProperty("metrics.instrumentation.enabled", "true"));
+
+    @Inject
+    MetricsRegistry metrics;
+
+    // гистограммы метода ищутся один раз, дальше - один get из map
+    private final Map<Method, Histogram[]> byMethod = new ConcurrentHashMap<>();
+
+    @AroundInvoke
+    public Object around(InvocationContext ctx) throws Exception {
+        if (!ENABLED) {
+            return ctx.proceed();
+        }
+
+        long sqlBefore = SqlStatementCounter.count();
+        long start = System.nanoTime();
+        Object res = null;
+        try {
+            res = ctx.proceed();
+            return res;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1_000;
+            Histogram[] h = byMethod.computeIfAbsent(ctx.getMethod(), this::histograms);
+            h[0].record(micros);
+            h[1].record(SqlStatementCounter.count() - sqlBefore);
+            long rows = rows(res);
+            if (rows >= 0) h[2].record(rows);
+        }
+    }
+
+    private Histogram[] histograms(Method m) {
+        String method = m.getDeclaringClass().getSimpleName() + "." + m.getName();
+        return new Histogram[]{
+                metrics.histogram(LATENCY, "Method latency, microseconds", "method", method),
+                metrics.histogram(SQL, "SQL statements per method call", "method", method),
+                metrics.histogram(ROWS, "Rows returned per method call", "method", method)
+        };
+    }
+
+    // -1 - результат не похож на набор строк
+    private static long rows(Object res) {
+        if (res instanceof Collection<?> c) return c.size();
+        if (res instanceof Map<?, ?> m) return m.size();
+        if (res instanceof GridTablePage<?> p) return p.getRows() == null ? 0 : p.getRows().size();
+        if (res instanceof GridTableResponse<?> r) return r.getRows() == null ? 0 : r.getRows().size();
+        if (res instanceof Optional<?> o) return o.isPresent() ? 1 : 0;
+        return -1;
+    }
+}
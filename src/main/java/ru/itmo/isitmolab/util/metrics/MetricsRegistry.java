@@ -0,0 +1,63 @@
+package ru.itmo.isitmolab.util.metrics;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Именованные гистограммы приложения (метрика + метки), общие для REST-статистики и /metrics
+@ApplicationScoped
+public class MetricsRegistry {
+
+    private final Map<String, Entry> histograms = new ConcurrentHashMap<>();
+
+    // labels - пары "имя", "значение", ...
+    public Histogram histogram(String name, String help, String... labels) {
+        String key = name + PrometheusWriter.labels(labels);
+        return histograms.computeIfAbsent(key, k -> new Entry(name, help, labels, new Histogram())).getHistogram();
+    }
+
+    public List<Entry> entries() {
+        List<Entry> out = new ArrayList<>(histograms.values());
+        out.sort(Comparator.comparing(Entry::getName).thenComparing(e -> PrometheusWriter.labels(e.getLabels())));
+        return out;
+    }
+
+    public List<Entry> entries(String name) {
+        return entries().stream().filter(e -> e.getName().equals(name)).toList();
+    }
+
+    public void reset(String name) {
+        histograms.values().stream()
+                .filter(e -> e.getName().equals(name))
+                .forEach(e -> e.getHistogram().reset());
+    }
+
+    public void writePrometheus(PrometheusWriter out) {
+        for (Entry e : entries()) {
+            out.summary(e.getName(), e.getHelp(), e.getHistogram(), e.getLabels());
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final String name;
+        private final String help;
+        private final String[] labels;
+        private final Histogram histogram;
+
+        // значение метки по имени (null - нет такой)
+        public String label(String labelName) {
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (labels[i].equals(labelName)) return labels[i + 1];
+            }
+            return null;
+        }
+    }
+}
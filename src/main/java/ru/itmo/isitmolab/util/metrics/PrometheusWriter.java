@@ -0,0 +1,74 @@
+package ru.itmo.isitmolab.util.metrics;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Текстовый формат Prometheus (exposition format 0.0.4); HELP/TYPE пишутся один раз на метрику
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final StringBuilder sb = new StringBuilder(4096);
+    private final Set<String> described = new HashSet<>();
+
+    public PrometheusWriter counter(String name, String help, double value, String... labels) {
+        return sample(name, help, "counter", value, labels);
+    }
+
+    public PrometheusWriter gauge(String name, String help, double value, String... labels) {
+        return sample(name, help, "gauge", value, labels);
+    }
+
+    public PrometheusWriter summary(String name, String help, Histogram h, String... labels) {
+        describe(name, help, "summary");
+        for (double q : QUANTILES) {
+            String[] withQ = new String[labels.length + 2];
+            System.arraycopy(labels, 0, withQ, 0, labels.length);
+            withQ[labels.length] = "quantile";
+            withQ[labels.length + 1] = Double.toString(q);
+            line(name, withQ, h.quantile(q));
+        }
+        line(name + "_sum", labels, h.getSum());
+        line(name + "_count", labels, h.getCount());
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private PrometheusWriter sample(String name, String help, String type, double value, String... labels) {
+        describe(name, help, type);
+        line(name, labels, value);
+        return this;
+    }
+
+    private void describe(String name, String help, String type) {
+        if (!described.add(name)) return;
+        sb.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void line(String name, String[] labels, double value) {
+        sb.append(name).append(labels(labels)).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) sb.append((long) value);
+        else sb.append(value);
+        sb.append('\n');
+    }
+
+    // {a="1",b="2"}; пусто, если меток нет
+    static String labels(String... labels) {
+        if (labels == null || labels.length == 0) return "";
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (out.length() > 1) out.append(',');
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.append('}').toString();
+    }
+}
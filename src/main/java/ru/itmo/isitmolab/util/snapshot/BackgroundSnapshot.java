@@ -0,0 +1,195 @@
+package ru.itmo.isitmolab.util.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Снимок таблицы в памяти (VehicleColumnStore, VehicleAggregates), который строится в фоне.
+// Пока снимка нет, read() отдаёт empty - отвечает БД, а запрос не ждёт полного скана таблицы.
+// Изменения, закоммиченные во время скана, копятся и накатываются на новый снимок перед подменой:
+// все они - put/remove по id, поэтому повтор уже попавших в скан изменений безопасен
+public final class BackgroundSnapshot<S> {
+
+    private static final Logger log = Logger.getLogger(BackgroundSnapshot.class.getName());
+
+    // снимок, устаревший во время скана (invalidate), строится заново не больше стольких раз подряд
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final String name;
+    private final Executor executor;
+    private final Runnable rebuildTask; // rebuild(loader) бина в транзакции (через его CDI-прокси)
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private S state;
+    private boolean ready; // снимок совпадает с таблицей
+    private List<Consumer<S>> replay; // != null - идёт скан, изменения после коммита копятся для нового снимка
+    private boolean staleDuringScan; // во время скана прошли изменения мимо сущностей - снимок не ставится
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile long lastRebuildMillis = -1;
+    private volatile int lastReplayed;
+
+    public BackgroundSnapshot(String name, S empty, Executor executor, Runnable rebuildTask) {
+        this.name = name;
+        this.state = empty;
+        this.executor = executor;
+        this.rebuildTask = rebuildTask;
+    }
+
+    // Ответ из снимка под read-lock; empty - снимка нет, перестроение уже запущено в фоне
+    public <R> Optional<R> read(Function<S, R> reader) {
+        lock.readLock().lock();
+        try {
+            if (ready) return Optional.ofNullable(reader.apply(state));
+        } finally {
+            lock.readLock().unlock();
+        }
+        requestRebuild();
+        return Optional.empty();
+    }
+
+    // текущее состояние без проверки готовности (размеры для stats)
+    public <R> R peek(Function<S, R> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Закоммиченные изменения (AfterCommit): в готовый снимок - сразу, во время скана - ещё и в буфер.
+    // Если снимка нет и скан не идёт, изменение увидит следующий скан
+    public void apply(List<? extends Consumer<S>> changes) {
+        lock.writeLock().lock();
+        try {
+            if (ready) {
+                for (Consumer<S> c : changes) c.accept(state);
+            }
+            if (replay != null) replay.addAll(changes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Изменения мимо сущностей (COPY-импорт, bulk UPDATE): снимок перестраивается в фоне
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            if (replay != null) staleDuringScan = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        requestRebuild();
+    }
+
+    // отпустить снимок (выключение); идущий скан не будет поставлен
+    public void reset(S empty) {
+        lock.writeLock().lock();
+        try {
+            state = empty;
+            ready = false;
+            if (replay != null) staleDuringScan = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // одно фоновое перестроение за раз; повторный запрос во время него ничего не делает
+    public void requestRebuild() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::runRebuilds);
+        } catch (RuntimeException e) { // executor остановлен (undeploy) или перегружен
+            scheduled.set(false);
+            log.log(Level.WARNING, "Cannot schedule " + name + " rebuild", e);
+        }
+    }
+
+    private void runRebuilds() {
+        try {
+            for (int i = 0; i < MAX_ATTEMPTS && !isReady(); i++) rebuildTask.run();
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Cannot build " + name + ", reads go to the database", e);
+        } finally {
+            scheduled.set(false);
+        }
+    }
+
+    // Скан в потоке вызывающего (бин открывает транзакцию - драйвер читает курсором). false - уже идёт другой скан
+    // или снимок устарел за время скана (invalidate/reset)
+    public boolean rebuild(Supplier<S> loader) {
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            if (replay != null) return false;
+            replay = new ArrayList<>();
+            staleDuringScan = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        S fresh;
+        try {
+            fresh = loader.get();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                replay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            replayed = replay.size();
+            if (staleDuringScan) {
+                log.fine(name + " snapshot is outdated, rebuilding again");
+                return false;
+            }
+            for (Consumer<S> c : replay) c.accept(fresh);
+            state = fresh;
+            ready = true;
+        } finally {
+            replay = null;
+            lock.writeLock().unlock();
+        }
+        rebuilds.incrementAndGet();
+        lastReplayed = replayed;
+        lastRebuildMillis = System.currentTimeMillis() - started;
+        log.info(name + " rebuilt in " + lastRebuildMillis + " ms, " + replayed + " changes replayed");
+        return true;
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return ready;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void stats(Map<String, Object> out) {
+        out.put("ready", isReady());
+        out.put("rebuilding", scheduled.get());
+        out.put("rebuilds", rebuilds.get());
+        out.put("lastRebuildMillis", lastRebuildMillis);
+        out.put("lastReplayedChanges", lastReplayed);
+    }
+}
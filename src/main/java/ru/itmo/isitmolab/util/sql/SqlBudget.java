@@ -0,0 +1,14 @@
+package ru.itmo.isitmolab.util.sql;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Максимум SQL-запросов на один HTTP-запрос к ресурсу (см. SqlBudgetFilter).
+// Переопределение без пересборки: -Dsql.budget.VehicleController.queryVehicles=5
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlBudget {
+    int value();
+}
@@ -0,0 +1,61 @@
+package ru.itmo.isitmolab.util.sql;
+
+import lombok.experimental.UtilityClass;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Поиск SQL-ошибки в цепочке исключений (RollbackException -> PersistenceException -> ... -> SQLException).
+// Обходятся cause, suppressed и getNextException (батч JDBC прячет настоящую ошибку туда)
+@UtilityClass
+public final class SqlErrors {
+
+    public static final String UNIQUE_VIOLATION = "23505";
+
+    public static boolean hasSqlState(Throwable ex, String sqlState) {
+        return find(ex, sqlState, null) != null;
+    }
+
+    // нарушение конкретного UNIQUE-ограничения (имя ограничения есть в тексте ошибки PostgreSQL)
+    public static boolean isUniqueViolation(Throwable ex, String constraint) {
+        return find(ex, UNIQUE_VIOLATION, constraint) != null;
+    }
+
+    // значение ключа из detail ошибки PostgreSQL: "Key (name)=(Ford) already exists" (и в русской локали сервера:
+    // "Ключ "(name)=(Ford)" уже существует"); null - не нарушение constraint или detail недоступен
+    public static String uniqueViolationValue(Throwable ex, String constraint, String column) {
+        SQLException sql = find(ex, UNIQUE_VIOLATION, constraint);
+        if (sql == null || sql.getMessage() == null) return null;
+        Matcher m = Pattern.compile("\\(" + Pattern.quote(column) + "\\)=\\((.*)\\)").matcher(sql.getMessage());
+        return m.find() ? m.group(1) : null;
+    }
+
+    private static SQLException find(Throwable ex, String sqlState, String messagePart) {
+        if (ex == null || sqlState == null) return null;
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Throwable> stack = new ArrayDeque<>();
+        stack.add(ex);
+
+        while (!stack.isEmpty()) {
+            Throwable cur = stack.pop();
+            if (!seen.add(cur)) continue;
+            if (cur instanceof SQLException sql) {
+                if (sqlState.equals(sql.getSQLState())
+                        && (messagePart == null || String.valueOf(sql.getMessage()).contains(messagePart))) {
+                    return sql;
+                }
+                if (sql.getNextException() != null) stack.add(sql.getNextException());
+            }
+            for (Throwable suppressed : cur.getSuppressed()) {
+                stack.add(suppressed);
+            }
+            if (cur.getCause() != null) stack.add(cur.getCause());
+        }
+        return null;
+    }
+}
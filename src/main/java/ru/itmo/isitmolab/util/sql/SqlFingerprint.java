@@ -0,0 +1,27 @@
+package ru.itmo.isitmolab.util.sql;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.regex.Pattern;
+
+// "Отпечаток" SQL: литералы и списки параметров заменены, чтобы одинаковые по форме запросы
+// (select ... where id=? для разных id) считались одним - так видно N+1
+@UtilityClass
+public final class SqlFingerprint {
+
+    private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final int MAX_LENGTH = 300;
+
+    public static String of(String sql) {
+        if (sql == null) return "";
+        String s = STRING.matcher(sql).replaceAll("?");
+        s = NUMBER.matcher(s).replaceAll("?");
+        s = IN_LIST.matcher(s).replaceAll("(?...)");
+        s = SPACES.matcher(s).replaceAll(" ").trim();
+        return s.length() > MAX_LENGTH ? s.substring(0, MAX_LENGTH) + "..." : s;
+    }
+}
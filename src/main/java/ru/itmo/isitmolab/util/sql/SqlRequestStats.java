@@ -0,0 +1,77 @@
+package ru.itmo.isitmolab.util.sql;
+
+import lombok.Getter;
+import ru.itmo.isitmolab.exception.SqlBudgetExceededException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// SQL одного HTTP-запроса: общий счётчик + число запросов по отпечаткам.
+// Привязан к потоку обработки запроса (begin/end в SqlBudgetFilter, end в finally - SqlRequestStatsCleanupFilter),
+// пополняется из SqlStatementCounter
+public class SqlRequestStats {
+
+    private static final ThreadLocal<SqlRequestStats> CURRENT = new ThreadLocal<>();
+
+    @Getter
+    private final String resource;
+    @Getter
+    private final int budget; // < 0 - без ограничения
+    private final boolean failOnExceed;
+
+    @Getter
+    private int count;
+    private final Map<String, Integer> fingerprints = new LinkedHashMap<>();
+
+    SqlRequestStats(String resource, int budget, boolean failOnExceed) {
+        this.resource = resource;
+        this.budget = budget;
+        this.failOnExceed = failOnExceed;
+    }
+
+    // заменяет то, что могло остаться в потоке от запроса, завершившегося без response-фильтра
+    public static SqlRequestStats begin(String resource, int budget, boolean failOnExceed) {
+        SqlRequestStats s = new SqlRequestStats(resource, budget, failOnExceed);
+        CURRENT.set(s);
+        return s;
+    }
+
+    public static SqlRequestStats current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    void onStatement(String sql) {
+        count++;
+        fingerprints.merge(SqlFingerprint.of(sql), 1, Integer::sum);
+        if (failOnExceed && isExceeded()) {
+            // бросаем до выполнения лишнего запроса: транзакция откатится, клиент получит 500
+            throw new SqlBudgetExceededException(resource, budget, count, top(5));
+        }
+    }
+
+    public boolean isExceeded() {
+        return budget >= 0 && count > budget;
+    }
+
+    // самые частые отпечатки: "3x select ... where c.id=?"
+    public List<String> top(int limit) {
+        return fingerprints.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(e -> e.getValue() + "x " + e.getKey())
+                .toList();
+    }
+
+    // отпечатки, повторившиеся не меньше threshold раз - вероятный N+1
+    public List<String> repeated(int threshold) {
+        return fingerprints.entrySet().stream()
+                .filter(e -> e.getValue() >= threshold)
+                .map(e -> e.getValue() + "x " + e.getKey())
+                .toList();
+    }
+}
@@ -0,0 +1,27 @@
+package ru.itmo.isitmolab.util.sql;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// StatementInspector (persistence.xml: hibernate.session_factory.statement_inspector) считает SQL,
+// которые Hibernate готовит в текущем потоке. В отличие от глобальных счётчиков Statistics
+// не смешивает запросы параллельных запросов: разница count() до/после вызова - SQL именно этого вызова.
+// Сырой JDBC (doWork/doReturningWork, COPY) сюда не попадает.
+// Если поток обрабатывает HTTP-запрос с бюджетом (SqlBudgetFilter), запрос учитывается и в SqlRequestStats
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static long count() {
+        return COUNT.get()[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        SqlRequestStats req = SqlRequestStats.current();
+        if (req != null) {
+            req.onStatement(sql);
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,113 @@
+package ru.itmo.isitmolab.util.tx;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Действия, привязанные к завершению текущей JTA-транзакции (кеши грида, агрегаты, колоночный снимок, WebSocket).
+// Изменения транзакции копятся в списке под ключом вызывающего - одна interposed-синхронизация на ключ,
+// импорт в тысячи строк обрабатывается одной пачкой. Без активной транзакции (или если синхронизацию
+// не зарегистрировать) действие выполняется сразу: данные уже закоммичены
+@ApplicationScoped
+public class AfterCommit {
+
+    private static final Logger log = Logger.getLogger(AfterCommit.class.getName());
+
+    @Resource
+    TransactionSynchronizationRegistry txRegistry;
+
+    // action - только после успешного коммита
+    public void run(Runnable action) {
+        if (register(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) action.run();
+            }
+        })) return;
+        action.run();
+    }
+
+    // action - после завершения транзакции с любым исходом (сброс кешей, которые параллельный запрос
+    // мог заполнить ещё до коммита); без транзакции не вызывается - сбрасывать повторно нечего
+    public void afterCompletion(Runnable action) {
+        register(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    // item кладётся в пачку транзакции под ключом key; onCommit получает всю пачку один раз после коммита
+    public <T> void enlist(Object key, T item, Consumer<List<T>> onCommit) {
+        enlist(key, item, items -> items, onCommit);
+    }
+
+    // prepare вызывается в beforeCompletion (flush уже прошёл, транзакция ещё открыта - можно читать сущности),
+    // его результат уходит в onCommit. Исключение из prepare откатывает транзакцию - обработчик ловит сам.
+    // prepare/onCommit берутся у первого вызова в транзакции, поэтому должны быть без состояния
+    @SuppressWarnings("unchecked")
+    public <T, R> void enlist(Object key, T item, Function<List<T>, R> prepare, Consumer<R> onCommit) {
+        try {
+            if (active()) {
+                List<T> items = (List<T>) txRegistry.getResource(key);
+                if (items == null) {
+                    List<T> created = new ArrayList<>();
+                    txRegistry.putResource(key, created);
+                    txRegistry.registerInterposedSynchronization(new Synchronization() {
+                        private R prepared;
+
+                        @Override
+                        public void beforeCompletion() {
+                            prepared = prepare.apply(created);
+                        }
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (status == Status.STATUS_COMMITTED) onCommit.accept(prepared);
+                        }
+                    });
+                    items = created;
+                }
+                items.add(item);
+                return;
+            }
+        } catch (IllegalStateException e) {
+            log.log(Level.FINE, "Cannot register after-commit batch", e);
+        }
+        onCommit.accept(prepare.apply(List.of(item)));
+    }
+
+    private boolean register(Synchronization s) {
+        try {
+            if (active()) {
+                txRegistry.registerInterposedSynchronization(s);
+                return true;
+            }
+        } catch (IllegalStateException e) {
+            log.log(Level.FINE, "Cannot register after-commit action", e);
+        }
+        return false;
+    }
+
+    private boolean active() {
+        return txRegistry != null && txRegistry.getTransactionStatus() == Status.STATUS_ACTIVE;
+    }
+}
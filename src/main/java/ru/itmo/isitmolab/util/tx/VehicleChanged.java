@@ -0,0 +1,26 @@
+package ru.itmo.isitmolab.util.tx;
+
+import ru.itmo.isitmolab.dto.VehicleDto;
+import ru.itmo.isitmolab.model.Vehicle;
+
+// CDI-событие одиночной записи ТС из VehicleService (create/update/delete). Наблюдатели (кеши грида,
+// агрегаты, колоночный снимок, WebSocket) вызываются синхронно внутри транзакции: сбросить кеш нужно сразу,
+// а значения строки снять до закрытия persistence context; применение до коммита откладывает AfterCommit
+public record VehicleChanged(Type type, Long id, Vehicle vehicle, Integer version, VehicleDto before) {
+
+    public enum Type {CREATED, UPDATED, DELETED}
+
+    public static VehicleChanged created(Vehicle v) {
+        return new VehicleChanged(Type.CREATED, v.getId(), v, null, null);
+    }
+
+    // before - строка до изменения (VehicleDto.toDto до правок сущности)
+    public static VehicleChanged updated(VehicleDto before, Vehicle v) {
+        return new VehicleChanged(Type.UPDATED, v.getId(), v, null, before);
+    }
+
+    // сущность уже удалена, поэтому id и версия передаются явно
+    public static VehicleChanged deleted(Long id, Integer version, VehicleDto before) {
+        return new VehicleChanged(Type.DELETED, id, null, version, before);
+    }
+}
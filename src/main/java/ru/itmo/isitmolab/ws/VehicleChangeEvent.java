@@ -0,0 +1,59 @@
+package ru.itmo.isitmolab.ws;
+
+import jakarta.json.bind.annotation.JsonbPropertyOrder;
+import jakarta.json.bind.annotation.JsonbTransient;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.itmo.isitmolab.dto.VehicleDto;
+
+import java.util.function.Predicate;
+
+// Изменение одной строки грида ТС. data - состояние после коммита (для deleted - null),
+// before - состояние до изменения (для created - null), клиентам не отправляется: нужно подпискам,
+// чтобы сообщить и о строке, которая вышла из фильтра.
+// view - только в кадрах подписки с фильтром: updated-строка вошла в фильтр (enter) или вышла из него (leave),
+// клиенту надо перечитать страницу; без view строку достаточно обновить на месте
+@Getter
+@AllArgsConstructor
+@JsonbPropertyOrder({"type", "id", "version", "data", "view"})
+public class VehicleChangeEvent {
+
+    public enum Type {
+        created, updated, deleted
+    }
+
+    public enum View {
+        enter, leave
+    }
+
+    private final Type type;
+    private final Long id;
+    private final Integer version;
+    private final VehicleDto data;
+    @JsonbTransient
+    private final VehicleDto before;
+    private final View view;
+
+    VehicleChangeEvent(Type type, Long id, Integer version, VehicleDto data, VehicleDto before) {
+        this(type, id, version, data, before, null);
+    }
+
+    // событие для клиента с таким фильтром; null - строка не была и не стала ему видна
+    VehicleChangeEvent visibleTo(Predicate<VehicleDto> filter) {
+        boolean now = data != null && filter.test(data);
+        boolean was = before != null && filter.test(before);
+        if (!now && !was) return null;
+        if (type != Type.updated || now == was) return this;
+        return new VehicleChangeEvent(type, id, version, data, before, now ? View.enter : View.leave);
+    }
+
+    // несколько изменений одной строки в пределах окна схлопываются в одно; null - строки как не было
+    static VehicleChangeEvent merge(VehicleChangeEvent prev, VehicleChangeEvent next) {
+        if (prev == null) return next;
+        if (prev.type == Type.created) {
+            if (next.type == Type.deleted) return null; // создана и удалена - клиентам нечего показывать
+            return new VehicleChangeEvent(Type.created, next.id, next.version, next.data, null);
+        }
+        return new VehicleChangeEvent(next.type, next.id, next.version, next.data, prev.before);
+    }
+}
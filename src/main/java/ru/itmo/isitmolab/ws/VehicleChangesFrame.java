@@ -0,0 +1,16 @@
+package ru.itmo.isitmolab.ws;
+
+import jakarta.json.bind.annotation.JsonbPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// {"event":"changes","changes":[{"type":"updated","id":1,"version":3,"data":{...}}, ...]}
+@Getter
+@AllArgsConstructor
+@JsonbPropertyOrder({"event", "changes"})
+public class VehicleChangesFrame {
+    private final String event = "changes";
+    private final List<VehicleChangeEvent> changes;
+}
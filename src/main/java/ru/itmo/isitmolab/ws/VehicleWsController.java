@@ -28,7 +28,7 @@ public class VehicleWsController {
 
     @OnMessage
     public void onMessage(String message, Session session) {
-        // входящие
+        hub().onMessage(session, message); // подписка на изменения по filterModel
     }
 
 }
@@ -1,34 +1,278 @@
 package ru.itmo.isitmolab.ws;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.websocket.CloseReason;
 import jakarta.websocket.Session;
+import ru.itmo.isitmolab.dto.VehicleDto;
+import ru.itmo.isitmolab.model.Vehicle;
+import ru.itmo.isitmolab.util.GridTablePredicateBuilder;
+import ru.itmo.isitmolab.util.VehicleDtoPredicateBuilder;
+import ru.itmo.isitmolab.util.filter.GridFilter;
+import ru.itmo.isitmolab.util.tx.AfterCommit;
+import ru.itmo.isitmolab.util.tx.VehicleChanged;
 
-import java.util.Set;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @ApplicationScoped
 public class VehicleWsService {
 
-    private final Set<Session> sessions = ConcurrentHashMap.newKeySet(); // при ws вызовы с разных потоков
+    private static final Logger log = Logger.getLogger(VehicleWsService.class.getName());
+
+    // JAVA_OPTS="-Dws.refresh.window.ms=150" - окно, в котором все "refresh" склеиваются в один кадр
+    private final long refreshWindowMillis = Math.max(0, Long.getLong("ws.refresh.window.ms", 150L));
+    // больше изменений за окно (массовые операции) - вместо списка шлём один "refresh"
+    private final int maxChangesPerFrame = Integer.getInteger("ws.changes.max", 500);
+
+    // ключ ресурса транзакции со списком изменений, которые уйдут после её коммита
+    private static final Object TX_CHANGES_KEY = new Object();
+
+    // JAVA_OPTS="-Dws.session.queue.max=32 -Dws.session.stall.ms=30000"
+    private final int sessionQueueMax = Integer.getInteger("ws.session.queue.max", 32);
+    private final long sessionStallMillis = Long.getLong("ws.session.stall.ms", 30_000L);
+
+    // при ws вызовы с разных потоков; у каждой сессии своя ограниченная очередь отправки
+    private final Map<Session, WsSessionSender> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong evicted = new AtomicLong();
+
+    // true - отправка уже запланирована на конец текущего окна
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    // за окно был запрошен полный "refresh" - он перекрывает построчные изменения
+    private final AtomicBoolean refreshRequested = new AtomicBoolean();
+    // закоммиченные изменения строк, ещё не отправленные клиентам
+    private final Queue<VehicleChangeEvent> pendingChanges = new ConcurrentLinkedQueue<>();
+
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
+    // отдельный поток для рассылки: запрос не ждёт отправку по всем сессиям
+    private ScheduledExecutorService sender;
+
+    @PostConstruct
+    void init() {
+        sender = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sender.shutdownNow();
+        try {
+            jsonb.close();
+        } catch (Exception ignored) {
+        }
+    }
 
     public void add(Session s) {
-        sessions.add(s);
+        sessions.put(s, new WsSessionSender(s, sessionQueueMax, sessionStallMillis));
     }
 
     public void remove(Session s) {
         sessions.remove(s);
     }
 
-    public void broadcastText(String text) {
-        for (Session s : sessions) {
-            if (s.isOpen()) {
-                try {
-                    s.getAsyncRemote().sendText(text); // у объекта Session RemoteEndpoint и через него идут асинхронно данные по открытому WebSocket
-                } catch (IllegalStateException ignored) {
+    // Массовое изменение (импорт): клиенты получат один "refresh" на окно после коммита транзакции,
+    // сколько бы записей ни было. При откате ничего не отправляется
+    public void requestRefresh() {
+        afterCommit.run(() -> {
+            refreshRequested.set(true);
+            scheduleFlush();
+        });
+    }
 
+    // Построчные события одиночных create/update/delete: снимок строки берётся в beforeCompletion
+    // (после flush, поэтому version уже новая), отправка - только после коммита
+    void onVehicleChanged(@Observes VehicleChanged e) {
+        Supplier<VehicleChangeEvent> change = switch (e.type()) {
+            case CREATED -> snapshot(VehicleChangeEvent.Type.created, null, e.vehicle());
+            case UPDATED -> snapshot(VehicleChangeEvent.Type.updated, e.before(), e.vehicle());
+            case DELETED -> {
+                VehicleChangeEvent deleted =
+                        new VehicleChangeEvent(VehicleChangeEvent.Type.deleted, e.id(), e.version(), null, e.before());
+                yield () -> deleted;
+            }
+        };
+        afterCommit.enlist(TX_CHANGES_KEY, change, this::snapshotAll, this::publish);
+    }
+
+    private static Supplier<VehicleChangeEvent> snapshot(VehicleChangeEvent.Type type, VehicleDto before, Vehicle v) {
+        return () -> new VehicleChangeEvent(type, v.getId(), v.getVersion(), VehicleDto.toDto(v), before);
+    }
+
+    // null - снимок не удался: уведомление не должно откатывать транзакцию, клиенты получат полный refresh
+    private List<VehicleChangeEvent> snapshotAll(List<Supplier<VehicleChangeEvent>> changes) {
+        try {
+            List<VehicleChangeEvent> out = new ArrayList<>(changes.size());
+            for (Supplier<VehicleChangeEvent> s : changes) out.add(s.get());
+            return out;
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Cannot snapshot changed vehicles", e);
+            return null;
+        }
+    }
+
+    private void publish(List<VehicleChangeEvent> events) {
+        if (events == null) {
+            refreshRequested.set(true);
+            scheduleFlush();
+            return;
+        }
+        if (events.isEmpty()) return;
+        pendingChanges.addAll(events);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushPending.compareAndSet(false, true)) return; // уже ждёт отправки в этом окне
+        try {
+            sender.schedule(this::flush, refreshWindowMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) { // executor остановлен (undeploy)
+            flushPending.set(false);
+            log.log(Level.FINE, "Broadcast rejected", e);
+        }
+    }
+
+    // один кадр на окно: либо "refresh", либо список изменений, схлопнутых по id
+    private void flush() {
+        flushPending.set(false);
+
+        Map<Long, VehicleChangeEvent> merged = new LinkedHashMap<>();
+        VehicleChangeEvent e;
+        while ((e = pendingChanges.poll()) != null) {
+            VehicleChangeEvent m = VehicleChangeEvent.merge(merged.remove(e.getId()), e);
+            if (m != null) merged.put(m.getId(), m);
+        }
+
+        if (refreshRequested.getAndSet(false) || merged.size() > maxChangesPerFrame) {
+            broadcastText(WsSessionSender.REFRESH);
+        } else if (!merged.isEmpty()) {
+            broadcastChanges(new ArrayList<>(merged.values()));
+        }
+    }
+
+    // сессии, не присылавшие subscribe/unsubscribe, получают "refresh" (клиенты, которые знают только его),
+    // без фильтра - общий кадр, с фильтром - только строки, которые были или стали видны в их фильтре
+    // (с пометкой view, если строка вошла в фильтр или вышла из него)
+    private void broadcastChanges(List<VehicleChangeEvent> changes) {
+        long now = System.currentTimeMillis();
+        String all = null;
+        for (WsSessionSender sender : sessions.values()) {
+            Predicate<VehicleDto> filter = sender.getFilter();
+            String frame;
+            if (!sender.isChangeFrames()) {
+                frame = WsSessionSender.REFRESH;
+            } else if (filter == null) {
+                if (all == null) all = jsonb.toJson(new VehicleChangesFrame(changes));
+                frame = all;
+            } else {
+                List<VehicleChangeEvent> visible = new ArrayList<>();
+                for (VehicleChangeEvent c : changes) {
+                    VehicleChangeEvent v = c.visibleTo(filter);
+                    if (v != null) visible.add(v);
+                }
+                if (visible.isEmpty()) continue;
+                frame = jsonb.toJson(new VehicleChangesFrame(visible));
+            }
+            if (!sender.offer(frame, now)) evict(sender.getSession());
+        }
+    }
+
+    // Входящие сообщения клиента:
+    //   {"type":"subscribe","filterModel":{...}} - тот же формат, что GridTableRequest.filterModel
+    //   {"type":"unsubscribe"}                   - снова получать все изменения
+    // Любое из них включает для сессии JSON-кадры изменений вместо "refresh"
+    public void onMessage(Session s, String message) {
+        WsSessionSender sender = sessions.get(s);
+        if (sender == null) return;
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> msg = jsonb.fromJson(message, Map.class);
+            Object type = msg == null ? null : msg.get("type");
+            if ("subscribe".equals(type)) {
+                Object fm = msg.get("filterModel");
+                if (fm != null && !(fm instanceof Map<?, ?>)) {
+                    throw new IllegalArgumentException("filterModel must be an object");
                 }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> filterModel = (Map<String, Object>) fm;
+                // тот же разбор, что у REST-грида: неизвестная колонка или кривое значение - ошибка подписки
+                GridFilter filter = GridTablePredicateBuilder.compile(emf.getMetamodel().entity(Vehicle.class), filterModel);
+                sender.setFilter(filter.isEmpty() ? null : VehicleDtoPredicateBuilder.build(filter));
+                sender.setChangeFrames(true);
+                sender.offer("{\"event\":\"subscribed\"}", System.currentTimeMillis());
+            } else if ("unsubscribe".equals(type)) {
+                sender.setFilter(null);
+                sender.setChangeFrames(true);
+                sender.offer("{\"event\":\"unsubscribed\"}", System.currentTimeMillis());
+            } else {
+                throw new IllegalArgumentException("Unknown message type: " + type);
             }
+        } catch (RuntimeException e) { // JsonbException, ClassCastException из кривого filterModel и т.п.
+            log.log(Level.FINE, "Bad WebSocket message", e);
+            sender.offer(jsonb.toJson(Map.of("event", "error", "message", "Некорректная подписка")),
+                    System.currentTimeMillis());
+        }
+    }
+
+    // O(сессий): кадр только кладётся в очередь сессии, отправка идёт асинхронно по одному кадру
+    public void broadcastText(String text) {
+        long now = System.currentTimeMillis();
+        for (WsSessionSender sender : sessions.values()) {
+            if (!sender.offer(text, now)) evict(sender.getSession());
+        }
+    }
+
+    public List<WsSessionStats> sessionStats() {
+        long now = System.currentTimeMillis();
+        return sessions.values().stream().map(s -> s.stats(now)).toList();
+    }
+
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    // медленный клиент: закрываем, браузер переподключится и перечитает грид
+    private void evict(Session s) {
+        if (sessions.remove(s) == null) return;
+        evicted.incrementAndGet();
+        log.info(() -> "WebSocket session " + s.getId() + " evicted: send queue stalled");
+        try {
+            s.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+        } catch (IOException | IllegalStateException e) {
+            log.log(Level.FINE, "Cannot close evicted session", e);
         }
     }
 
-}
\ No newline at end of file
+}
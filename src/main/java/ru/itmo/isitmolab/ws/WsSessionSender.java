@@ -0,0 +1,130 @@
+package ru.itmo.isitmolab.ws;
+
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import ru.itmo.isitmolab.dto.VehicleDto;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Predicate;
+
+// Очередь отправки одной WebSocket-сессии: в полёте не больше одного кадра, остальные ждут в ограниченной очереди.
+// Переполнение не копит кадры: очередь заменяется одним "refresh" (клиент перечитает всё, что пропустил).
+// Сессия, которая остаётся переполненной или не подтверждает отправку дольше таймаута, считается зависшей
+class WsSessionSender {
+
+    static final String REFRESH = "refresh";
+
+    private final Session session;
+    private final int maxQueue;
+    private final long stallMillis;
+
+    private final Deque<String> queue = new ArrayDeque<>();
+    private boolean inFlight;
+    private long inFlightSince;
+    private long saturatedSince; // 0 - очередь не переполнялась с последнего опустошения
+
+    // подписка клиента (filterModel грида); null - получает все изменения
+    private volatile Predicate<VehicleDto> filter;
+    // клиент прислал subscribe/unsubscribe, т.е. понимает JSON-кадры изменений (грид ТС во фронтенде
+    // подписывается при открытии сокета); до этого (сторонние клиенты) вместо них отправляется "refresh"
+    private volatile boolean changeFrames;
+
+    private long sent;
+    private long dropped;
+    private long failed;
+
+    WsSessionSender(Session session, int maxQueue, long stallMillis) {
+        this.session = session;
+        this.maxQueue = Math.max(1, maxQueue);
+        this.stallMillis = stallMillis;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    Predicate<VehicleDto> getFilter() {
+        return filter;
+    }
+
+    void setFilter(Predicate<VehicleDto> filter) {
+        this.filter = filter;
+    }
+
+    boolean isChangeFrames() {
+        return changeFrames;
+    }
+
+    void setChangeFrames(boolean changeFrames) {
+        this.changeFrames = changeFrames;
+    }
+
+    // false - клиент завис дольше stallMillis, сессию надо закрыть
+    synchronized boolean offer(String frame, long now) {
+        if (isStalled(now)) return false;
+
+        if (REFRESH.equals(frame)) {
+            // "refresh" перекрывает всё, что ещё не ушло
+            dropped += queue.size();
+            queue.clear();
+            queue.add(frame);
+        } else if (queue.size() >= maxQueue) {
+            dropped += queue.size() + 1;
+            queue.clear();
+            queue.add(REFRESH);
+            if (saturatedSince == 0) saturatedSince = now;
+        } else if (REFRESH.equals(queue.peekLast())) {
+            dropped++; // изменение уже покрыто ожидающим "refresh"
+        } else {
+            queue.add(frame);
+        }
+        sendNext(now);
+        return true;
+    }
+
+    private boolean isStalled(long now) {
+        if (stallMillis <= 0) return false;
+        return (saturatedSince != 0 && now - saturatedSince > stallMillis)
+                || (inFlight && now - inFlightSince > stallMillis);
+    }
+
+    private void sendNext(long now) {
+        if (inFlight || queue.isEmpty()) return;
+        if (!session.isOpen()) {
+            queue.clear();
+            return;
+        }
+        String frame = queue.poll();
+        inFlight = true;
+        inFlightSince = now;
+        try {
+            session.getAsyncRemote().sendText(frame, this::onSent);
+        } catch (IllegalStateException e) {
+            inFlight = false;
+            failed++;
+        }
+    }
+
+    private synchronized void onSent(SendResult result) {
+        inFlight = false;
+        if (result.isOK()) sent++;
+        else failed++;
+        if (queue.isEmpty()) saturatedSince = 0; // клиент догнал
+        sendNext(System.currentTimeMillis());
+    }
+
+    synchronized WsSessionStats stats(long now) {
+        return WsSessionStats.builder()
+                .sessionId(session.getId())
+                .subscribed(filter != null)
+                .changeFrames(changeFrames)
+                .queueDepth(queue.size())
+                .inFlight(inFlight)
+                .sent(sent)
+                .dropped(dropped)
+                .failed(failed)
+                .saturatedMillis(saturatedSince == 0 ? 0 : now - saturatedSince)
+                .build();
+    }
+}
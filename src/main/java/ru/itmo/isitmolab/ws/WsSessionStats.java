@@ -0,0 +1,22 @@
+package ru.itmo.isitmolab.ws;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WsSessionStats {
+    private String sessionId;
+    private boolean subscribed; // есть фильтр подписки
+    private boolean changeFrames; // получает JSON-кадры изменений, а не только "refresh"
+    private int queueDepth;
+    private boolean inFlight;
+    private long sent;
+    private long dropped; // кадры, заменённые "refresh" из-за переполнения или перекрытые им
+    private long failed;
+    private long saturatedMillis; // сколько очередь уже переполнена (0 - нет)
+}